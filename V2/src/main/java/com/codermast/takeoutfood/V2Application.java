@@ -4,10 +4,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.ServletComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Slf4j
 @SpringBootApplication
 @ServletComponentScan("com.codermast.takeoutfood.filter")
+@EnableScheduling
 public class V2Application {
     public static void main(String[] args) {
         SpringApplication.run(V2Application.class, args);
@@ -0,0 +1,66 @@
+package com.codermast.takeoutfood.common;
+
+import com.codermast.takeoutfood.entity.ShoppingCart;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * @Description: 金额计算工具类，计算过程统一使用以分为单位的long，只在写入数据库和返回前端时转换为以元为单位的BigDecimal
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+public class AmountUtils {
+    // 金额的小数位数，即元到分
+    private static final int FEN_SCALE = 2;
+
+    private AmountUtils() {
+    }
+
+    /**
+     * @param yuan 以元为单位的金额
+     * @Description: 元转换为分，超过两位的小数四舍五入
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static long toFen(BigDecimal yuan) {
+        if (yuan == null) {
+            return 0;
+        }
+        // 小数位数已经是两位时setScale直接返回原对象
+        return yuan.setScale(FEN_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * @param fen 以分为单位的金额
+     * @Description: 分转换为元，保留两位小数
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static BigDecimal toYuan(long fen) {
+        return BigDecimal.valueOf(fen, FEN_SCALE);
+    }
+
+    /**
+     * @param unitPrice 单价，单位元
+     * @param number 数量
+     * @Description: 计算一行商品的小计，单位分，溢出时抛出异常
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static long lineTotalFen(BigDecimal unitPrice, Integer number) {
+        return Math.multiplyExact(toFen(unitPrice), number == null ? 0 : number.longValue());
+    }
+
+    /**
+     * @param shoppingCarts 购物车商品列表
+     * @Description: 计算购物车总金额，单位分
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static long cartTotalFen(List<ShoppingCart> shoppingCarts) {
+        long total = 0;
+        for (ShoppingCart shoppingCart : shoppingCarts) {
+            total = Math.addExact(total, lineTotalFen(shoppingCart.getAmount(), shoppingCart.getNumber()));
+        }
+        return total;
+    }
+}
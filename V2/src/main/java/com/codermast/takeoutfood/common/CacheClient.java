@@ -0,0 +1,187 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * @Description: 缓存查询工具，统一旁路缓存的 查缓存 -> 未命中查库 -> 写缓存 流程。
+ * 同一个key的重建在本节点内合并为一次，节点之间通过Redis短锁互斥，过期时间增加随机抖动，避免缓存击穿和雪崩
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class CacheClient {
+    // 重建锁的key前缀
+    private static final String LOCK_PREFIX = "lock:";
+
+    // 重建锁的持有时间，单位秒，防止持锁节点宕机后锁无法释放
+    private static final long LOCK_SECONDS = 10;
+
+    // 未抢到锁时，等待其他节点重建缓存的最长时间，单位毫秒
+    private static final long WAIT_MILLIS = 3000;
+
+    // 未抢到锁时，轮询缓存的间隔，单位毫秒
+    private static final long RETRY_INTERVAL_MILLIS = 50;
+
+    // 过期时间随机抖动的最大比例
+    private static final double JITTER_RATIO = 0.1;
+
+    // 空值占位，数据不存在时缓存该值，避免不存在的id反复穿透到数据库
+    private static final String NULL_VALUE = "";
+
+    // 空值缓存的有效期，单位秒
+    private static final long NULL_TTL_SECONDS = 120;
+
+    // 仅当锁的值与自己的标识一致时才删除，避免误删其他节点的锁
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CacheTagRegistry cacheTagRegistry;
+
+    // 本节点正在重建的key，同一个key的并发请求共享同一次重建结果
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * @param key 缓存的key
+     * @param loader 缓存未命中时的数据加载逻辑，一般为查询数据库
+     * @param timeout 缓存有效期，实际有效期会增加不超过10%的随机抖动
+     * @param unit 有效期单位
+     * @param tags 缓存依赖的标签，标签失效时该缓存随之删除
+     * @Description: 查询缓存，未命中时每个key只重建一次；加载结果为null时缓存空值占位，返回null
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader, long timeout, TimeUnit unit, String... tags) {
+        Object value = redisTemplate.opsForValue().get(key);
+        // 缓存命中
+        if (value != null) {
+            return (T) unwrap(value);
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(key, future);
+
+        // 本节点已有线程在重建，等待其结果
+        if (running != null) {
+            return (T) unwrap(await(key, running, loader));
+        }
+
+        try {
+            value = unwrap(loadWithLock(key, loader, timeout, unit, tags));
+            future.complete(value);
+            return (T) value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * @param key 缓存的key
+     * @param value 缓存的值
+     * @param timeout 缓存有效期，实际有效期会增加随机抖动
+     * @param unit 有效期单位
+     * @param tags 缓存依赖的标签
+     * @Description: 写入缓存并登记标签
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void set(String key, Object value, long timeout, TimeUnit unit, String... tags) {
+        redisTemplate.opsForValue().set(key, value, jitter(unit.toMillis(timeout)), TimeUnit.MILLISECONDS);
+        cacheTagRegistry.tag(key, timeout, unit, tags);
+    }
+
+    // 获取Redis锁后重建缓存，未获取到锁则等待其他节点的重建结果
+    private Object loadWithLock(String key, Supplier<?> loader, long timeout, TimeUnit unit, String... tags) {
+        String lockKey = LOCK_PREFIX + key;
+        String token = UUID.randomUUID().toString();
+
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_SECONDS, TimeUnit.SECONDS);
+        if (Boolean.TRUE.equals(locked)) {
+            try {
+                // 双重检查，获取锁之前其他节点可能已经完成重建
+                Object value = redisTemplate.opsForValue().get(key);
+                if (value != null) {
+                    return value;
+                }
+                value = loader.get();
+                if (value != null) {
+                    set(key, value, timeout, unit, tags);
+                } else {
+                    // 数据不存在，短时间缓存空值
+                    redisTemplate.opsForValue().set(key, NULL_VALUE, NULL_TTL_SECONDS, TimeUnit.SECONDS);
+                }
+                return value;
+            } finally {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            }
+        }
+
+        // 其他节点正在重建，轮询等待缓存写入
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            sleep();
+            Object value = redisTemplate.opsForValue().get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+
+        // 等待超时，直接查库兜底，不写缓存
+        log.warn("等待缓存重建超时，直接加载数据：{}", key);
+        return loader.get();
+    }
+
+    // 等待本节点其他线程的重建结果，超时或失败时自行加载
+    private Object await(String key, CompletableFuture<Object> running, Supplier<?> loader) {
+        try {
+            return running.get(WAIT_MILLIS + LOCK_SECONDS * 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException("系统繁忙，请稍后再试");
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("等待缓存重建失败，直接加载数据：{}", key);
+            return loader.get();
+        }
+    }
+
+    // 将空值占位还原为null
+    private static Object unwrap(Object value) {
+        return NULL_VALUE.equals(value) ? null : value;
+    }
+
+    // 在过期时间的基础上增加随机抖动，避免大量key同时过期
+    static long jitter(long millis) {
+        long bound = (long) (millis * JITTER_RATIO);
+        return bound > 0 ? millis + ThreadLocalRandom.current().nextLong(bound) : millis;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(RETRY_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException("系统繁忙，请稍后再试");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.codermast.takeoutfood.common;
+
+/**
+ * @Description: 缓存key统一生成类，key的格式为 takeout:版本号:命名空间:类型:参数。
+ * 缓存对象的结构发生不兼容的变化时修改版本号，新版本启动后直接使用新的key，旧版本的缓存自然过期，无需清空Redis
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+public class CacheKeys {
+    // 缓存结构版本号
+    public static final String VERSION = "v1";
+
+    private static final String PREFIX = "takeout:" + VERSION + ":";
+
+    // 各实体的命名空间
+    private static final String DISH = PREFIX + "dish:";
+    private static final String SETMEAL = PREFIX + "setmeal:";
+    private static final String CATEGORY = PREFIX + "category:";
+    private static final String EMPLOYEE = PREFIX + "employee:";
+    private static final String ADDRESS_BOOK = PREFIX + "addressBook:";
+    private static final String MENU = PREFIX + "menu:";
+    private static final String TAG = PREFIX + "tag:";
+
+    private CacheKeys() {
+    }
+
+    /**
+     * @Description: 菜品分页
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String dishPage(int page, int pageSize, String name) {
+        return DISH + "page:" + page + ":" + pageSize + ":" + name;
+    }
+
+    /**
+     * @Description: 单个菜品
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String dish(Object id) {
+        return DISH + "one:" + id;
+    }
+
+    /**
+     * @Description: 分类下起售的菜品列表
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String dishList(Long categoryId) {
+        return DISH + "list:" + categoryId;
+    }
+
+    /**
+     * @Description: 套餐分页
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String setmealPage(int page, int pageSize, String name) {
+        return SETMEAL + "page:" + page + ":" + pageSize + ":" + name;
+    }
+
+    /**
+     * @Description: 单个套餐
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String setmeal(Object id) {
+        return SETMEAL + "one:" + id;
+    }
+
+    /**
+     * @Description: 分类下指定状态的套餐列表
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String setmealList(Object categoryId, Integer status) {
+        return SETMEAL + "list:" + categoryId + ":" + status;
+    }
+
+    /**
+     * @Description: 分类分页
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String categoryPage(int page, int pageSize) {
+        return CATEGORY + "page:" + page + ":" + pageSize;
+    }
+
+    /**
+     * @Description: 单个分类
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String category(Long id) {
+        return CATEGORY + "one:" + id;
+    }
+
+    /**
+     * @Description: 指定类型的分类列表
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String categoryList(Integer type) {
+        return CATEGORY + "list:" + type;
+    }
+
+    /**
+     * @Description: 员工分页
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String employeePage(int page, int pageSize, String name) {
+        return EMPLOYEE + "page:" + page + ":" + pageSize + ":" + name;
+    }
+
+    /**
+     * @Description: 单个员工
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String employee(Long id) {
+        return EMPLOYEE + "one:" + id;
+    }
+
+    /**
+     * @Description: 已登录的员工
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String employeeLogin(Long id) {
+        return EMPLOYEE + "login:" + id;
+    }
+
+    /**
+     * @Description: 用户的地址列表
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String addressBookList(Long userId) {
+        return ADDRESS_BOOK + "list:" + userId;
+    }
+
+    /**
+     * @Description: 单个地址
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String addressBook(Object id) {
+        return ADDRESS_BOOK + "one:" + id;
+    }
+
+    /**
+     * @Description: 菜单快照的一个片段，片段为分类列表、某个分类下的菜品或套餐列表的json
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String menuSegment(String segment) {
+        return MENU + "segment:" + segment;
+    }
+
+    /**
+     * @Description: 菜单快照，仅用作本地近端缓存的key
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String menuSnapshot() {
+        return MENU + "snapshot";
+    }
+
+    /**
+     * @Description: 对象缓存对应的响应json缓存，依赖的标签与对象缓存相同
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String json(String key) {
+        return key + ":json";
+    }
+
+    /**
+     * @Description: 缓存标签集合
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public static String tag(String tag) {
+        return TAG + tag;
+    }
+}
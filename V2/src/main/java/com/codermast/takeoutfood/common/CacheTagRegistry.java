@@ -0,0 +1,98 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @Description: 缓存标签登记表，每个缓存记录其依赖的实体或分类标签，数据修改时按标签精确删除受影响的缓存。
+ * 每个标签对应一个Redis集合，集合中存放依赖该标签的缓存key
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class CacheTagRegistry {
+    // 每次删除的key数量，避免unpack参数过多
+    private static final int DELETE_CHUNK = 500;
+
+    // 取出所有标签集合中的key并删除，最后删除标签集合本身，返回删除的缓存数量；
+    // 使用UNLINK，key占用的内存由Redis后台线程回收，不阻塞其他命令
+    static final String INVALIDATE_LUA =
+            "local count = 0\n" +
+            "for _, tag in ipairs(KEYS) do\n" +
+            "  local keys = redis.call('smembers', tag)\n" +
+            "  for i = 1, #keys, " + DELETE_CHUNK + " do\n" +
+            "    count = count + redis.call('unlink', unpack(keys, i, math.min(i + " + (DELETE_CHUNK - 1) + ", #keys)))\n" +
+            "  end\n" +
+            "  redis.call('unlink', tag)\n" +
+            "end\n" +
+            "return count";
+
+    private static final DefaultRedisScript<Long> INVALIDATE_SCRIPT = new DefaultRedisScript<>(INVALIDATE_LUA, Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @param key 缓存的key
+     * @param timeout 缓存有效期
+     * @param unit 有效期单位
+     * @param tags 缓存依赖的标签
+     * @Description: 登记缓存依赖的标签，标签集合的有效期为缓存有效期的两倍，保证覆盖带抖动的缓存有效期
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void tag(String key, long timeout, TimeUnit unit, String... tags) {
+        if (tags == null || tags.length == 0) {
+            return;
+        }
+        long tagSeconds = tagSeconds(timeout, unit);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String tag : tags) {
+                stringConnection.sAdd(CacheKeys.tag(tag), key);
+                stringConnection.expire(CacheKeys.tag(tag), tagSeconds);
+            }
+            return null;
+        });
+    }
+
+    // 标签集合的有效期，单位秒
+    static long tagSeconds(long timeout, TimeUnit unit) {
+        return Math.max(unit.toSeconds(timeout) * 2, 1);
+    }
+
+    /**
+     * @param tags 发生变化的标签
+     * @Description: 删除依赖这些标签的全部缓存，一次脚本调用完成
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void invalidate(String... tags) {
+        invalidate(Arrays.asList(tags));
+    }
+
+    /**
+     * @param tags 发生变化的标签
+     * @Description: 删除依赖这些标签的全部缓存，一次脚本调用完成
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void invalidate(Collection<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return;
+        }
+        List<String> tagKeys = tags.stream().distinct().map(CacheKeys::tag).collect(Collectors.toList());
+        Long count = stringRedisTemplate.execute(INVALIDATE_SCRIPT, tagKeys);
+        log.debug("缓存标签{}失效，删除{}个缓存", tags, count);
+    }
+}
@@ -0,0 +1,358 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 缓存写缓冲区，收集一次请求或一个事务中的全部缓存修改，在事务提交后、写出响应之前通过一次管道操作写入Redis。
+ * 事务回滚时丢弃缓存修改；既不在事务中也不在请求中时立即写入
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class CacheWriteBuffer {
+    private static final byte[] INVALIDATE_SCRIPT = CacheTagRegistry.INVALIDATE_LUA.getBytes(StandardCharsets.UTF_8);
+
+    // 当前请求的缓存修改，由CacheWriteInterceptor在请求开始时创建，写出响应体之前或请求结束时写入
+    private static final ThreadLocal<Batch> REQUEST_BATCH = new ThreadLocal<>();
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private CompactRedisSerializer compactRedisSerializer;
+
+    @Autowired
+    private MenuNearCache menuNearCache;
+
+    @Autowired
+    private ContentVersions contentVersions;
+
+    // 写入统计：写入次数、失败次数、删除的key数、写入的key数、累计耗时和最大耗时
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong evictedKeys = new AtomicLong();
+    private final AtomicLong writtenKeys = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @Description: 请求开始，之后的缓存修改在请求结束时统一写入
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void begin() {
+        REQUEST_BATCH.set(new Batch());
+    }
+
+    /**
+     * @Description: 写入请求期间收集的缓存修改，之后的修改立即写入；在写出响应体之前和请求结束时调用，重复调用不会重复写入
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void end() {
+        Batch batch = REQUEST_BATCH.get();
+        REQUEST_BATCH.remove();
+        flush(batch);
+    }
+
+    /**
+     * @param key 缓存的key
+     * @param value 缓存的值
+     * @param timeout 缓存有效期，实际有效期会增加随机抖动
+     * @param unit 有效期单位
+     * @param tags 缓存依赖的标签
+     * @Description: 写入缓存并登记标签
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void set(String key, Object value, long timeout, TimeUnit unit, String... tags) {
+        Batch batch = current();
+        batch.deletes.remove(key);
+        batch.sets.put(key, new Entry(value, unit.toMillis(timeout), CacheTagRegistry.tagSeconds(timeout, unit), tags));
+        flushIfUnbuffered(batch);
+    }
+
+    /**
+     * @param keys 要删除的缓存key
+     * @Description: 删除缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void delete(Collection<String> keys) {
+        Batch batch = current();
+        for (String key : keys) {
+            batch.sets.remove(key);
+            batch.deletes.add(key);
+        }
+        flushIfUnbuffered(batch);
+    }
+
+    /**
+     * @param keys 要删除的缓存key
+     * @Description: 删除缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void delete(String... keys) {
+        delete(Arrays.asList(keys));
+    }
+
+    /**
+     * @param tags 发生变化的标签
+     * @Description: 删除依赖这些标签的全部缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void invalidate(Collection<String> tags) {
+        Batch batch = current();
+        batch.invalidate(tags);
+        flushIfUnbuffered(batch);
+    }
+
+    /**
+     * @param tags 发生变化的标签
+     * @Description: 删除依赖这些标签的全部缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void invalidate(String... tags) {
+        invalidate(Arrays.asList(tags));
+    }
+
+    /**
+     * @Description: 菜单数据发生变化，Redis写入完成后通知所有节点清空菜单本地缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void invalidateMenu() {
+        Batch batch = current();
+        batch.menuChanged = true;
+        flushIfUnbuffered(batch);
+    }
+
+    /**
+     * @param names 发生变化的内容名称
+     * @Description: Redis写入完成后递增这些内容的版本号，使客户端缓存的ETag失效
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void bumpVersion(String... names) {
+        Batch batch = current();
+        batch.versions.addAll(Arrays.asList(names));
+        flushIfUnbuffered(batch);
+    }
+
+    // 事务中的修改绑定到事务，其次绑定到请求，都不存在时返回一个立即写入的临时批次。
+    // 事务提交后的回调中注册的同步不会再被执行，这类回调应直接使用CacheClient写入
+    private Batch current() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                if (synchronization instanceof TransactionBatch) {
+                    return ((TransactionBatch) synchronization).batch;
+                }
+            }
+            TransactionBatch transactionBatch = new TransactionBatch();
+            TransactionSynchronizationManager.registerSynchronization(transactionBatch);
+            return transactionBatch.batch;
+        }
+        Batch batch = REQUEST_BATCH.get();
+        return batch != null ? batch : new Batch(true);
+    }
+
+    private void flushIfUnbuffered(Batch batch) {
+        if (batch.unbuffered) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * @Description: 获取缓存写入统计信息，用于观察每次请求的缓存删除开销
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public Map<String, Object> getStats() {
+        long flushCount = flushes.get();
+        long nanos = totalNanos.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("flushes", flushCount);
+        stats.put("failures", failures.get());
+        stats.put("evictedKeys", evictedKeys.get());
+        stats.put("writtenKeys", writtenKeys.get());
+        stats.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(nanos));
+        stats.put("avgMicros", flushCount == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(nanos / flushCount));
+        stats.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+        return stats;
+    }
+
+    // 写入一批修改，失败时重试一次；仍然失败时旧缓存只能等待过期，记录错误和涉及的标签、key
+    private void flush(Batch batch) {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        try {
+            if (batch.hasRedisWrites()) {
+                try {
+                    execute(batch);
+                } catch (Exception e) {
+                    log.warn("缓存写入失败，重试一次：{}", e.getMessage());
+                    execute(batch);
+                }
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            log.error("缓存写入失败，旧缓存将保留到过期，标签：{}，删除：{}，写入：{}，{}",
+                    batch.tags, batch.deletes, batch.sets.keySet(), e.getMessage());
+        } finally {
+            if (batch.menuChanged) {
+                menuNearCache.invalidate();
+            }
+            contentVersions.bump(batch.versions);
+        }
+    }
+
+    // 一次管道操作依次执行：按标签删除、删除key、写入缓存及登记标签；删除统一使用UNLINK。
+    // 按标签删除先于写入执行，记录失效之前写入的缓存已在记录失效时丢弃，写入的都是失效之后的数据
+    private void execute(Batch batch) {
+        long start = System.nanoTime();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (!batch.tags.isEmpty()) {
+                byte[][] tagKeys = batch.tags.stream().map(tag -> bytes(CacheKeys.tag(tag))).toArray(byte[][]::new);
+                connection.eval(INVALIDATE_SCRIPT, ReturnType.INTEGER, tagKeys.length, tagKeys);
+            }
+            if (!batch.deletes.isEmpty()) {
+                connection.unlink(batch.deletes.stream().map(CacheWriteBuffer::bytes).toArray(byte[][]::new));
+            }
+            for (Map.Entry<String, Entry> set : batch.sets.entrySet()) {
+                byte[] key = bytes(set.getKey());
+                Entry entry = set.getValue();
+                connection.set(key, compactRedisSerializer.serialize(entry.value),
+                        Expiration.milliseconds(CacheClient.jitter(entry.millis)), RedisStringCommands.SetOption.upsert());
+                for (String tag : entry.tags) {
+                    byte[] tagKey = bytes(CacheKeys.tag(tag));
+                    connection.sAdd(tagKey, key);
+                    connection.expire(tagKey, entry.tagSeconds);
+                }
+            }
+            return null;
+        });
+        record(batch, results, System.nanoTime() - start);
+    }
+
+    // 管道结果中前两项依次为按标签删除和按key删除的数量
+    private void record(Batch batch, List<Object> results, long nanos) {
+        long evicted = 0;
+        int index = 0;
+        if (!batch.tags.isEmpty()) {
+            evicted += toLong(results.get(index++));
+        }
+        if (!batch.deletes.isEmpty()) {
+            evicted += toLong(results.get(index));
+        }
+
+        flushes.incrementAndGet();
+        evictedKeys.addAndGet(evicted);
+        writtenKeys.addAndGet(batch.sets.size());
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        log.debug("缓存写入完成：删除{}个key，写入{}个key，耗时{}微秒", evicted, batch.sets.size(), TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private static long toLong(Object result) {
+        return result instanceof Number ? ((Number) result).longValue() : 0L;
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 事务提交后写入；处于请求中时并入请求的批次，与请求的其他缓存修改一起写入；回滚时丢弃
+    private class TransactionBatch implements TransactionSynchronization {
+        private final Batch batch = new Batch();
+
+        @Override
+        public void afterCommit() {
+            Batch requestBatch = REQUEST_BATCH.get();
+            if (requestBatch != null) {
+                requestBatch.merge(batch);
+            } else {
+                CacheWriteBuffer.this.flush(batch);
+            }
+        }
+    }
+
+    // 一批缓存修改
+    private static class Batch {
+        // 不在事务和请求中，记录后立即写入
+        private final boolean unbuffered;
+
+        private final Set<String> tags = new LinkedHashSet<>();
+
+        private final Set<String> deletes = new LinkedHashSet<>();
+
+        private final Map<String, Entry> sets = new LinkedHashMap<>();
+
+        private final Set<String> versions = new LinkedHashSet<>();
+
+        private boolean menuChanged;
+
+        private Batch() {
+            this(false);
+        }
+
+        private Batch(boolean unbuffered) {
+            this.unbuffered = unbuffered;
+        }
+
+        private boolean hasRedisWrites() {
+            return !tags.isEmpty() || !deletes.isEmpty() || !sets.isEmpty();
+        }
+
+        private boolean isEmpty() {
+            return !hasRedisWrites() && !menuChanged && versions.isEmpty();
+        }
+
+        // 记录标签失效，之前记录的依赖这些标签的写入已经过期，一并丢弃
+        private void invalidate(Collection<String> changed) {
+            tags.addAll(changed);
+            sets.values().removeIf(entry -> Arrays.stream(entry.tags).anyMatch(changed::contains));
+        }
+
+        // 其他批次的修改发生在本批次之后
+        private void merge(Batch other) {
+            invalidate(other.tags);
+            for (String key : other.deletes) {
+                sets.remove(key);
+                deletes.add(key);
+            }
+            for (Map.Entry<String, Entry> set : other.sets.entrySet()) {
+                deletes.remove(set.getKey());
+                sets.put(set.getKey(), set.getValue());
+            }
+            versions.addAll(other.versions);
+            menuChanged |= other.menuChanged;
+        }
+    }
+
+    // 一条待写入的缓存
+    private static class Entry {
+        private final Object value;
+        private final long millis;
+        private final long tagSeconds;
+        private final String[] tags;
+
+        private Entry(Object value, long millis, long tagSeconds, String[] tags) {
+            this.value = value;
+            this.millis = millis;
+            this.tagSeconds = tagSeconds;
+            this.tags = tags == null ? new String[0] : tags;
+        }
+    }
+}
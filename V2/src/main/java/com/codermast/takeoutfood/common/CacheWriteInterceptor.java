@@ -0,0 +1,32 @@
+package com.codermast.takeoutfood.common;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @Description: 缓存写入拦截器，请求期间的缓存修改通过一次管道操作写入Redis；有响应体时由CacheWriteResponseAdvice
+ * 在写出响应体之前写入，请求结束时再写入剩余的修改并清理线程变量
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Component
+public class CacheWriteInterceptor implements HandlerInterceptor {
+    @Autowired
+    private CacheWriteBuffer cacheWriteBuffer;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        cacheWriteBuffer.begin();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        cacheWriteBuffer.end();
+    }
+}
@@ -0,0 +1,36 @@
+package com.codermast.takeoutfood.common;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * @Description: 在响应体写出之前写入请求期间收集的缓存修改，客户端收到写操作的响应时缓存已经更新；
+ * 没有响应体的请求仍由CacheWriteInterceptor在请求结束时写入
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@ControllerAdvice
+public class CacheWriteResponseAdvice implements ResponseBodyAdvice<Object> {
+    @Autowired
+    private CacheWriteBuffer cacheWriteBuffer;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        cacheWriteBuffer.end();
+        return body;
+    }
+}
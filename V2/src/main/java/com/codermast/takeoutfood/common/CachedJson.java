@@ -0,0 +1,19 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.Getter;
+
+/**
+ * @Description: 序列化好的响应json，由CachedJsonHttpMessageConverter原样写入响应，不再经过Jackson序列化
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Getter
+public class CachedJson {
+    // 完整的R对象json，UTF-8编码
+    private final byte[] bytes;
+
+    public CachedJson(byte[] bytes) {
+        this.bytes = bytes;
+    }
+}
@@ -0,0 +1,48 @@
+package com.codermast.takeoutfood.common;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Description: 序列化好的响应json的消息转换器，直接将字节写入响应输出流，只用于输出
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+public class CachedJsonHttpMessageConverter extends AbstractHttpMessageConverter<CachedJson> {
+
+    public CachedJsonHttpMessageConverter() {
+        super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return CachedJson.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected CachedJson readInternal(Class<? extends CachedJson> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("不支持读取CachedJson", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(CachedJson cachedJson, MediaType contentType) {
+        return (long) cachedJson.getBytes().length;
+    }
+
+    @Override
+    protected void writeInternal(CachedJson cachedJson, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(cachedJson.getBytes());
+    }
+}
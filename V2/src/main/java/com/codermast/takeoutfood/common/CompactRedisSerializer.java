@@ -0,0 +1,129 @@
+package com.codermast.takeoutfood.common;
+
+import com.baomidou.mybatisplus.core.metadata.OrderItem;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: Redis值的紧凑序列化器，基于Jackson的Smile二进制格式，未知属性忽略以兼容类结构变化，
+ * 同时统计序列化的数据大小和耗时
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong encodeCount = new AtomicLong();
+    private final AtomicLong encodeBytes = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong decodeBytes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    /**
+     * @Description: 构建序列化器
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public CompactRedisSerializer() {
+        // 字节数组按原始字节写入，不做7位编码，缓存的响应json不会因此膨胀；读取时兼容两种编码
+        SmileFactory smileFactory = new SmileFactory();
+        smileFactory.configure(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT, false);
+        this.objectMapper = new ObjectMapper(smileFactory);
+        // 收到未知属性时不报异常，类新增或删除字段后仍可读取旧数据
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        this.objectMapper.registerModule(new JavaTimeModule());
+        // 记录类型信息，以便缓存的Page、List等泛型对象还原为原来的类型；只允许还原本项目、常用JDK类型、数值和分页对象，
+        // 防止Redis中被写入的数据借助类型信息实例化任意类
+        BasicPolymorphicTypeValidator typeValidator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("com.codermast.takeoutfood.")
+                .allowIfSubType("java.util.")
+                .allowIfSubType("java.time.")
+                .allowIfSubType("java.math.")
+                .allowIfSubType(Number.class)
+                .allowIfSubType(Page.class)
+                .allowIfSubType(OrderItem.class)
+                .build();
+        this.objectMapper.activateDefaultTyping(typeValidator, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY_ARRAY;
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(value);
+            long cost = System.nanoTime() - start;
+
+            encodeCount.incrementAndGet();
+            encodeBytes.addAndGet(bytes.length);
+            encodeNanos.addAndGet(cost);
+            log.debug("Redis序列化：类型={}，大小={}字节，耗时={}微秒", value.getClass().getSimpleName(), bytes.length, cost / 1000);
+            return bytes;
+        } catch (Exception e) {
+            throw new SerializationException("Redis值序列化失败：" + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = objectMapper.readValue(bytes, Object.class);
+        } catch (Exception e) {
+            throw new SerializationException("Redis值反序列化失败：" + e.getMessage(), e);
+        }
+        long cost = System.nanoTime() - start;
+
+        decodeCount.incrementAndGet();
+        decodeBytes.addAndGet(bytes.length);
+        decodeNanos.addAndGet(cost);
+        log.debug("Redis反序列化：大小={}字节，耗时={}微秒", bytes.length, cost / 1000);
+        return value;
+    }
+
+    /**
+     * @Description: 获取序列化统计信息，包括次数、总字节数、平均字节数和平均耗时
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("encodeCount", encodeCount.get());
+        stats.put("encodeBytes", encodeBytes.get());
+        stats.put("encodeAvgBytes", average(encodeBytes.get(), encodeCount.get()));
+        stats.put("encodeAvgMicros", average(encodeNanos.get(), encodeCount.get()) / 1000);
+        stats.put("decodeCount", decodeCount.get());
+        stats.put("decodeBytes", decodeBytes.get());
+        stats.put("decodeAvgBytes", average(decodeBytes.get(), decodeCount.get()));
+        stats.put("decodeAvgMicros", average(decodeNanos.get(), decodeCount.get()) / 1000);
+        return stats;
+    }
+
+    private static double average(long total, long count) {
+        return count == 0 ? 0D : (double) total / count;
+    }
+}
@@ -0,0 +1,197 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Description: 内容版本号，写操作后递增对应内容的版本号，读接口用版本号生成ETag，客户端缓存未过期时直接返回304，
+ * 不需要查询Redis和数据库，也不需要计算响应体的摘要。
+ * 版本号按名称散列到固定数量的槽位，保存在Redis的一个hash中，所有节点共用，同一内容在各节点生成的ETag相同，节点重启后也不变；
+ * 本地保存一份副本，每个槽位最多每秒从Redis读取一次，收到递增通知时立即重新读取。
+ * hash中另存一个纪元标识并写入ETag，Redis数据丢失、版本号从0重新计数时纪元随之变化，旧的ETag不会误命中；
+ * Redis不可用时本节点改用新的纪元，恢复后写回Redis，使各节点的ETag统一变化一次
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class ContentVersions implements MessageListener {
+    // 版本号递增通知的发布订阅频道，消息内容为逗号分隔的名称
+    public static final String BUMP_CHANNEL = "takeout-food:version:bump";
+
+    // 菜单版本号，分类、菜品、套餐的写操作清空菜单本地缓存时递增
+    public static final String MENU = "menu";
+
+    // 保存版本号的hash，field为槽位序号
+    private static final String KEY = "contentVersion";
+
+    // 纪元标识的field
+    private static final String EPOCH_FIELD = "epoch";
+
+    // 槽位数量，必须为2的幂
+    private static final int SLOTS = 1024;
+
+    // 本地副本的刷新间隔，单位毫秒
+    private static final long REFRESH_MILLIS = 1000;
+
+    // 各槽位版本号的本地副本
+    private final AtomicLongArray versions = new AtomicLongArray(SLOTS);
+
+    // 各槽位上次从Redis读取的时间
+    private final AtomicLongArray refreshedAt = new AtomicLongArray(SLOTS);
+
+    private volatile String epoch = "0";
+
+    // 本节点因Redis递增失败改用了新的纪元，尚未写回Redis
+    private volatile boolean diverged;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @param name 内容名称
+     * @Description: 生成内容当前版本的ETag
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public String etag(String name) {
+        long version = version(name);
+        return "\"" + epoch + "-" + version + "\"";
+    }
+
+    /**
+     * @param name 内容名称
+     * @param owner 内容所属的用户id
+     * @Description: 生成某个用户私有内容当前版本的ETag，ETag中带有用户id，不同用户的内容落到同一槽位时ETag也不相同
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public String etag(String name, Long owner) {
+        long version = version(name);
+        return "\"" + owner + "-" + epoch + "-" + version + "\"";
+    }
+
+    /**
+     * @param name 内容名称
+     * @Description: 在Redis中递增版本号并更新本地副本，不通知其他节点，其他节点在刷新间隔内读到新值；
+     * Redis不可用时本节点改用新的纪元，保证不会对已变化的内容返回304
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void increment(String name) {
+        int slot = slot(name);
+        try {
+            Long version = hash().increment(KEY, String.valueOf(slot), 1);
+            versions.set(slot, version == null ? 0 : version);
+        } catch (Exception e) {
+            log.warn("版本号递增失败，本节点改用新的纪元：{}", e.getMessage());
+            epoch = newEpoch();
+            diverged = true;
+        }
+        refreshedAt.set(slot, System.currentTimeMillis());
+    }
+
+    /**
+     * @param name 内容名称
+     * @Description: 立即从Redis重新读取版本号，用于收到其他节点的变更通知后
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void refresh(String name) {
+        int slot = slot(name);
+        refreshedAt.set(slot, System.currentTimeMillis());
+        load(slot);
+    }
+
+    /**
+     * @param names 发生变化的内容名称
+     * @Description: 递增版本号并通知其他节点立即重新读取，应在缓存已经更新之后调用
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void bump(Collection<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        names.forEach(this::increment);
+        try {
+            stringRedisTemplate.convertAndSend(BUMP_CHANNEL, String.join(",", names));
+        } catch (Exception e) {
+            // 通知失败时其他节点在刷新间隔内读到新的版本号
+            log.warn("版本号递增通知发送失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * @Description: 收到递增通知，从Redis重新读取对应的版本号，本节点发出的通知也会收到，重复读取不影响结果
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        Arrays.stream(body.split(",")).forEach(this::refresh);
+    }
+
+    // 获取槽位的版本号，本地副本超过刷新间隔时由一个线程从Redis读取，其他线程继续使用本地副本
+    private long version(String name) {
+        int slot = slot(name);
+        long now = System.currentTimeMillis();
+        long last = refreshedAt.get(slot);
+        if (now - last >= REFRESH_MILLIS && refreshedAt.compareAndSet(slot, last, now)) {
+            load(slot);
+        }
+        return versions.get(slot);
+    }
+
+    // 从Redis读取纪元标识和槽位的版本号，读取失败时继续使用本地副本
+    private void load(int slot) {
+        try {
+            if (diverged) {
+                // Redis恢复后写回本节点的纪元，其他节点读到后ETag统一变化
+                hash().put(KEY, EPOCH_FIELD, epoch);
+                diverged = false;
+            }
+            List<Object> values = hash().multiGet(KEY, Arrays.asList(EPOCH_FIELD, String.valueOf(slot)));
+            Object remoteEpoch = values.get(0);
+            if (remoteEpoch == null) {
+                // hash不存在或已丢失，生成新的纪元标识，多个节点同时生成时以先写入的为准
+                hash().putIfAbsent(KEY, EPOCH_FIELD, newEpoch());
+                remoteEpoch = hash().get(KEY, EPOCH_FIELD);
+            }
+            String current = String.valueOf(remoteEpoch);
+            if (!current.equals(epoch)) {
+                // 纪元变化时版本号重新计数，本地副本全部作废，各槽位下次访问时重新读取
+                for (int i = 0; i < SLOTS; i++) {
+                    versions.set(i, 0);
+                    refreshedAt.set(i, 0);
+                }
+                epoch = current;
+            }
+            Object remoteVersion = values.get(1);
+            versions.set(slot, remoteVersion == null ? 0 : Long.parseLong(remoteVersion.toString()));
+        } catch (Exception e) {
+            log.warn("版本号读取失败，继续使用本地副本：{}", e.getMessage());
+        }
+    }
+
+    private static String newEpoch() {
+        return Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    private HashOperations<String, Object, Object> hash() {
+        return stringRedisTemplate.opsForHash();
+    }
+
+    private static int slot(String name) {
+        int hash = name.hashCode();
+        return (hash ^ (hash >>> 16)) & (SLOTS - 1);
+    }
+}
@@ -0,0 +1,57 @@
+package com.codermast.takeoutfood.common;
+
+import com.codermast.takeoutfood.dto.DishDto;
+import com.codermast.takeoutfood.service.DishService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 菜品缓存监听器，菜品修改的事务提交后再刷新缓存，事务回滚时缓存保持不变
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class DishCacheListener {
+    @Autowired
+    private DishService dishService;
+
+    @Autowired
+    private CacheClient cacheClient;
+
+    @Autowired
+    private CacheTagRegistry cacheTagRegistry;
+
+    @Autowired
+    private MenuNearCache menuNearCache;
+
+    /**
+     * @param event 菜品修改事件
+     * @Description: 删除分页和新旧分类的菜品列表缓存，并用提交后的数据刷新该菜品的缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDishUpdated(DishUpdatedEvent event) {
+        Long dishId = event.getDishId();
+        try {
+            cacheTagRegistry.invalidate("dish", "dish:" + dishId,
+                    "dish:category:" + event.getOldCategoryId(), "dish:category:" + event.getNewCategoryId());
+
+            DishDto dishDto = dishService.getByIdWithFlavor(String.valueOf(dishId));
+            if (dishDto != null) {
+                cacheClient.set(CacheKeys.dish(dishId), dishDto, 60, TimeUnit.MINUTES, "dish:" + dishId);
+            }
+        } catch (Exception e) {
+            // 数据库已提交，缓存刷新失败只记录日志，缓存会在过期后自动重建
+            log.warn("菜品{}缓存刷新失败：{}", dishId, e.getMessage());
+        } finally {
+            menuNearCache.invalidate();
+        }
+    }
+}
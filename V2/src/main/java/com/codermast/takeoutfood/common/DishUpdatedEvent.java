@@ -0,0 +1,21 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.Data;
+
+/**
+ * @Description: 菜品修改事件，事务提交后用于刷新菜品缓存
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Data
+public class DishUpdatedEvent {
+    // 菜品id
+    private final Long dishId;
+
+    // 修改前的分类id
+    private final Long oldCategoryId;
+
+    // 修改后的分类id
+    private final Long newCategoryId;
+}
@@ -0,0 +1,210 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * @Description: 基于Redis位图的id布隆过滤器，用于在查库前拦截不存在的id。
+ * 启动时根据数据表重建，新增数据时同步写入；重建完成时在位图末尾置一个就绪位，就绪位与数据位在同一个key中，
+ * 位图被清空、淘汰或主从切换后丢失时就绪位也随之消失，此时一律放行并在后台重新加载
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class IdBloomFilter {
+    // 各个过滤器的名称
+    public static final String DISH = "dish";
+    public static final String SETMEAL = "setmeal";
+    public static final String ADDRESS_BOOK = "addressBook";
+    public static final String EMPLOYEE = "employee";
+
+    private static final String KEY_PREFIX = "bloom:";
+
+    // 位图大小，2^20位即128KB，十万条数据时误判率约为1%
+    private static final long BIT_SIZE = 1L << 20;
+
+    // 就绪位，位于数据位之后
+    private static final long READY_OFFSET = BIT_SIZE;
+
+    // 哈希函数个数
+    private static final int HASH_COUNT = 5;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 各个过滤器全部id的加载方法，用于重建
+    private final Map<String, Supplier<Collection<Long>>> loaders = new ConcurrentHashMap<>();
+
+    // 正在等待或正在重建的过滤器，避免重复提交
+    private final Set<String> rebuilding = ConcurrentHashMap.newKeySet();
+
+    // 重建线程，重建只查询id列，一个线程依次执行即可
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "id-bloom-filter-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param name 过滤器名称
+     * @param id 要判断的id
+     * @Description: 判断id是否可能存在，返回false时id一定不存在
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public boolean mightContain(String name, Object id) {
+        Long longId = parseId(id);
+        if (longId == null) {
+            return false;
+        }
+
+        String key = KEY_PREFIX + name;
+        long[] offsets = offsets(longId);
+        try {
+            // 一次管道操作读取就绪位和所有数据位
+            List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.getBit(key, READY_OFFSET);
+                for (long offset : offsets) {
+                    stringConnection.getBit(key, offset);
+                }
+                return null;
+            });
+            // 就绪位为0说明位图还未重建完成或已经丢失，放行并在后台重建
+            if (!Boolean.TRUE.equals(bits.get(0))) {
+                rebuildAsync(name);
+                return true;
+            }
+            return !bits.contains(Boolean.FALSE);
+        } catch (Exception e) {
+            log.warn("布隆过滤器查询失败，放行：{}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * @param name 过滤器名称
+     * @param id 新增的id
+     * @Description: 新增数据时将id写入过滤器
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void put(String name, Long id) {
+        putAll(name, Collections.singletonList(id));
+    }
+
+    /**
+     * @param name 过滤器名称
+     * @param loader 加载数据表中全部id的方法
+     * @Description: 注册过滤器的id加载方法，位图丢失时用它重建
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void register(String name, Supplier<Collection<Long>> loader) {
+        loaders.put(name, loader);
+    }
+
+    /**
+     * @param name 过滤器名称
+     * @Description: 在后台线程中重建过滤器，已在等待或重建中时不重复提交
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void rebuildAsync(String name) {
+        if (!loaders.containsKey(name) || !rebuilding.add(name)) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    rebuild(name);
+                } finally {
+                    rebuilding.remove(name);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuilding.remove(name);
+        }
+    }
+
+    // 写入全部id后再置就绪位，完成后过滤器才开始拦截；失败时保持未就绪，一律放行
+    private void rebuild(String name) {
+        try {
+            Collection<Long> ids = loaders.get(name).get();
+            putAll(name, ids);
+            stringRedisTemplate.opsForValue().setBit(KEY_PREFIX + name, READY_OFFSET, true);
+            log.info("布隆过滤器{}重建完成，共{}条数据", name, ids.size());
+        } catch (Exception e) {
+            log.warn("布隆过滤器{}重建失败：{}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * @Description: 停止重建线程
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    // 管道批量置位，位只增不减，因此重建期间其他节点的写入不会丢失
+    private void putAll(String name, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String key = KEY_PREFIX + name;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Long id : ids) {
+                for (long offset : offsets(id)) {
+                    stringConnection.setBit(key, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    // 双重哈希计算id对应的各个位
+    private static long[] offsets(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        long[] offsets = new long[HASH_COUNT];
+        for (int i = 0; i < HASH_COUNT; i++) {
+            offsets[i] = Math.floorMod(hash1 + i * hash2, BIT_SIZE);
+        }
+        return offsets;
+    }
+
+    // 64位混淆函数，使雪花id的各位充分散列
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    private static Long parseId(Object id) {
+        if (id instanceof Long) {
+            return (Long) id;
+        }
+        try {
+            return Long.valueOf(String.valueOf(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
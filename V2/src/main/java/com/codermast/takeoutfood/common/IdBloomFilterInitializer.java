@@ -0,0 +1,60 @@
+package com.codermast.takeoutfood.common;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.codermast.takeoutfood.entity.AddressBook;
+import com.codermast.takeoutfood.entity.Dish;
+import com.codermast.takeoutfood.entity.Employee;
+import com.codermast.takeoutfood.entity.SetMeal;
+import com.codermast.takeoutfood.service.AddressBookService;
+import com.codermast.takeoutfood.service.DishService;
+import com.codermast.takeoutfood.service.EmployeeService;
+import com.codermast.takeoutfood.service.SetMealService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Collectors;
+
+/**
+ * @Description: 项目启动后注册各个id布隆过滤器的加载方法，并在后台线程中根据数据表重建，不阻塞启动
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class IdBloomFilterInitializer implements ApplicationRunner {
+    @Autowired
+    private IdBloomFilter idBloomFilter;
+
+    @Autowired
+    private DishService dishService;
+
+    @Autowired
+    private SetMealService setMealService;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        register(IdBloomFilter.DISH, dishService, new LambdaQueryWrapper<Dish>().select(Dish::getId));
+        register(IdBloomFilter.SETMEAL, setMealService, new LambdaQueryWrapper<SetMeal>().select(SetMeal::getId));
+        register(IdBloomFilter.ADDRESS_BOOK, addressBookService, new LambdaQueryWrapper<AddressBook>().select(AddressBook::getId));
+        register(IdBloomFilter.EMPLOYEE, employeeService, new LambdaQueryWrapper<Employee>().select(Employee::getId));
+    }
+
+    // 只查询id列，注册后立即在后台重建；之后位图丢失时由过滤器自行重建
+    private <T> void register(String name, IService<T> service, LambdaQueryWrapper<T> idQueryWrapper) {
+        idBloomFilter.register(name, () -> service.listObjs(idQueryWrapper).stream()
+                .map(id -> Long.valueOf(String.valueOf(id)))
+                .collect(Collectors.toList()));
+        idBloomFilter.rebuildAsync(name);
+    }
+}
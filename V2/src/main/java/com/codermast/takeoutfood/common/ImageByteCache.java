@@ -0,0 +1,161 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 热点图片的本地字节缓存，图片内容保存在堆外的直接内存中，按总字节数限制容量，超出时淘汰最久未访问的图片。
+ * 图片以内容或UUID命名，同一文件的内容不会变化，因此缓存不需要失效，命中时不再读取磁盘
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class ImageByteCache {
+    // 缓存的最大总字节数
+    @Value("${takeout-food.image-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    // 单张图片的最大字节数，更大的图片不缓存，避免少数大图挤占缓存
+    @Value("${takeout-food.image-cache.max-entry-bytes:1048576}")
+    private long maxEntryBytes;
+
+    // 按访问顺序排列，容量由put方法按字节数控制
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long residentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param image 图片资源，只缓存磁盘上的文件
+     * @Description: 获取图片的缓存，未命中时读取文件到直接内存并缓存；图片过大或不是磁盘文件时返回null
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public Entry get(Resource image) throws IOException {
+        if (!image.isFile()) {
+            return null;
+        }
+        File file = image.getFile();
+        String key = file.getPath();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+
+        long length = file.length();
+        if (length == 0 || length > maxEntryBytes || length > maxBytes) {
+            return null;
+        }
+        entry = load(file, length);
+        put(key, entry);
+        return entry;
+    }
+
+    /**
+     * @Description: 获取缓存统计信息，包括命中率和占用的直接内存字节数
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+            stats.put("residentBytes", residentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", total == 0 ? 0D : (double) hitCount / total);
+        return stats;
+    }
+
+    // 读取整个文件到直接内存，读取完成后切换为只读
+    private static Entry load(File file, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 循环直到读满
+            }
+        }
+        buffer.flip();
+        return new Entry(buffer.asReadOnlyBuffer(), file.lastModified());
+    }
+
+    // 加入缓存，总字节数超出上限时从最久未访问的图片开始淘汰；并发加载同一图片时保留先加入的
+    private void put(String key, Entry entry) {
+        synchronized (entries) {
+            if (entries.containsKey(key)) {
+                return;
+            }
+            entries.put(key, entry);
+            residentBytes += entry.getLength();
+
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (residentBytes > maxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                residentBytes -= eldest.getLength();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // 缓存的图片，被淘汰的直接内存在没有请求引用后由GC回收
+    public static class Entry {
+        private final ByteBuffer buffer;
+        private final long lastModified;
+
+        private Entry(ByteBuffer buffer, long lastModified) {
+            this.buffer = buffer;
+            this.lastModified = lastModified;
+        }
+
+        public long getLength() {
+            return buffer.capacity();
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @param start 起始位置
+         * @param end 结束位置，包含在内
+         * @Description: 获取[start, end]区间的只读视图，各请求的读取位置互不影响
+         * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+         */
+        public ByteBuffer slice(long start, long end) {
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) start);
+            view.limit((int) end + 1);
+            return view;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.codermast.takeoutfood.common;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @Description: 响应json缓存，缓存的是R对象按JacksonObjectMapper规则（Long转为字符串等）序列化后的字节，
+ * 命中时直接写入响应，既不需要在Redis读取时还原Page、List等对象，也不需要再序列化为json
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Component
+public class JsonResponseCache {
+    // 与消息转换器使用相同的序列化规则
+    private static final JacksonObjectMapper OBJECT_MAPPER = new JacksonObjectMapper();
+
+    @Autowired
+    private CacheClient cacheClient;
+
+    /**
+     * @param key 缓存的key，一般为CacheKeys.json(对象缓存的key)
+     * @param loader 缓存未命中时的数据加载逻辑，结果作为R的data序列化
+     * @param timeout 缓存有效期
+     * @param unit 有效期单位
+     * @param tags 缓存依赖的标签，与对象缓存相同
+     * @Description: 查询响应json缓存，未命中时加载数据并序列化为成功响应后缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public CachedJson get(String key, Supplier<?> loader, long timeout, TimeUnit unit, String... tags) {
+        byte[] bytes = cacheClient.get(key, () -> toJson(R.success(loader.get())), timeout, unit, tags);
+        return new CachedJson(bytes);
+    }
+
+    private static byte[] toJson(Object value) {
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new CustomException("响应序列化失败");
+        }
+    }
+}
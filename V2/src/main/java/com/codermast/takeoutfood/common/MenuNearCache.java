@@ -0,0 +1,183 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 菜单本地近端缓存，位于Redis缓存之前，按容量和过期时间双重限制，
+ * 后台写操作通过Redis发布订阅通知所有节点清空本地缓存
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class MenuNearCache implements MessageListener {
+    // 失效通知的发布订阅频道
+    public static final String INVALIDATE_CHANNEL = "takeout-food:menu:invalidate";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ContentVersions contentVersions;
+
+    // 最大缓存条数
+    @Value("${takeout-food.near-cache.max-size:1000}")
+    private int maxSize;
+
+    // 缓存有效期，单位秒
+    @Value("${takeout-food.near-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    // 按访问顺序排列的LRU映射，超出容量时淘汰最久未访问的条目
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            boolean remove = size() > maxSize;
+            if (remove) {
+                evictions.incrementAndGet();
+            }
+            return remove;
+        }
+    };
+
+    // 清空代数，每次清空时递增，由entries的锁保护
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param key 缓存的key
+     * @Description: 获取本地缓存，不存在或已过期时返回null
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public Object get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @Description: 获取当前的清空代数，应在加载数据之前获取，写入时用于判断加载期间缓存是否被清空过
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * @param key 缓存的key
+     * @param value 缓存的值，为null时不缓存
+     * @param generation 加载数据之前获取的清空代数，加载期间缓存被清空过时不缓存，避免旧数据在清空后被写回
+     * @Description: 写入本地缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void put(String key, Object value, long generation) {
+        if (value == null) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        synchronized (entries) {
+            if (generation == this.generation) {
+                entries.put(key, new Entry(value, expireAt));
+            }
+        }
+    }
+
+    /**
+     * @Description: 清空本节点的本地缓存并递增清空代数，再从Redis重新读取菜单版本号，清空前开始加载的数据不会再写入本地缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void clear() {
+        evictAll();
+        contentVersions.refresh(ContentVersions.MENU);
+    }
+
+    /**
+     * @Description: 后台写操作后调用，清空本节点缓存，在Redis中递增菜单版本号后通知其他节点清空；
+     * 其他节点收到通知后先清空本地缓存，再重新读取版本号
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public void invalidate() {
+        evictAll();
+        contentVersions.increment(ContentVersions.MENU);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, "all");
+        } catch (Exception e) {
+            // 通知失败时其他节点的缓存依靠过期时间兜底
+            log.warn("菜单本地缓存失效通知发送失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * @Description: 收到失效通知，清空本地缓存
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        clear();
+        log.info("收到菜单失效通知，已清空本地缓存，{}", getStats());
+    }
+
+    /**
+     * @Description: 获取命中统计信息
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", total == 0 ? 0D : (double) hitCount / total);
+        return stats;
+    }
+
+    private void evictAll() {
+        synchronized (entries) {
+            entries.clear();
+            generation++;
+        }
+    }
+
+    // 缓存条目，记录值和过期时间点
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
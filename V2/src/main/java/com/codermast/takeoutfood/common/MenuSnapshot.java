@@ -0,0 +1,23 @@
+package com.codermast.takeoutfood.common;
+
+import lombok.Getter;
+
+/**
+ * @Description: 菜单快照，保存序列化后的完整菜单json和gzip压缩后的字节，请求时直接输出，不再序列化
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Getter
+public class MenuSnapshot {
+    // 未压缩的json字节
+    private final byte[] json;
+
+    // gzip压缩后的字节
+    private final byte[] gzip;
+
+    public MenuSnapshot(byte[] json, byte[] gzip) {
+        this.json = json;
+        this.gzip = gzip;
+    }
+}
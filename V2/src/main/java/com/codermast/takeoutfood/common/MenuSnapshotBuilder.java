@@ -0,0 +1,138 @@
+package com.codermast.takeoutfood.common;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.codermast.takeoutfood.entity.Category;
+import com.codermast.takeoutfood.service.CategoryService;
+import com.codermast.takeoutfood.service.DishService;
+import com.codermast.takeoutfood.service.SetMealService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @Description: 菜单快照构建器，将起售的分类、菜品（含口味）和套餐组装为一份json并压缩。
+ * 快照由若干片段拼接而成，每个片段是分类列表或某个分类下菜品、套餐列表序列化后的json，按标签缓存在Redis中；
+ * 后台写操作只会使相关标签的片段失效，重建快照时未失效的片段直接复用，只重新查询和序列化变化的部分
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Component
+public class MenuSnapshotBuilder {
+    private static final JacksonObjectMapper OBJECT_MAPPER = new JacksonObjectMapper();
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private DishService dishService;
+
+    @Autowired
+    private SetMealService setMealService;
+
+    @Autowired
+    private CacheClient cacheClient;
+
+    @Autowired
+    private MenuNearCache menuNearCache;
+
+    /**
+     * @Description: 获取当前菜单快照，本地缓存中没有时重新构建；后台写操作清空本地缓存后，下一次请求触发重建
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    public MenuSnapshot get() {
+        String key = CacheKeys.menuSnapshot();
+        MenuSnapshot snapshot = (MenuSnapshot) menuNearCache.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        synchronized (this) {
+            // 等待锁期间其他线程可能已经构建完成
+            snapshot = (MenuSnapshot) menuNearCache.get(key);
+            if (snapshot == null) {
+                long generation = menuNearCache.generation();
+                snapshot = build();
+                menuNearCache.put(key, snapshot, generation);
+            }
+        }
+        return snapshot;
+    }
+
+    // 拼接各片段的json，结构与R一致：{"code":1,"data":{"categories":[...],"dishes":{分类id:[...]},"setmeals":{分类id:[...]}},"map":{}}
+    private MenuSnapshot build() {
+        long start = System.nanoTime();
+        // 分类对象列表单独缓存，分类列表接口缓存的是序列化后的响应json（CacheKeys.json前缀），两者不共用；均带category标签，分类变更时一起失效
+        List<Category> categories = cacheClient.get(CacheKeys.categoryList(null), () -> {
+            LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.orderByDesc(Category::getSort);
+            return categoryService.list(queryWrapper);
+        }, 60, TimeUnit.MINUTES, "category");
+
+        StringBuilder dishes = new StringBuilder();
+        StringBuilder setmeals = new StringBuilder();
+        for (Category category : categories) {
+            Long categoryId = category.getId();
+            // 1为菜品分类，2为套餐分类
+            if (Integer.valueOf(1).equals(category.getType())) {
+                String segment = segment("dish:" + categoryId, () -> dishService.listWithFlavor(categoryId),
+                        "dish:category:" + categoryId, "category:" + categoryId);
+                append(dishes, categoryId, segment);
+            } else {
+                String segment = segment("setmeal:" + categoryId,
+                        () -> setMealService.getListByCategoryIdWithSetMeal(String.valueOf(categoryId), 1),
+                        "setmeal:category:" + categoryId);
+                append(setmeals, categoryId, segment);
+            }
+        }
+
+        String json = "{\"code\":1,\"data\":{\"categories\":" + segment("categories", () -> categories, "category")
+                + ",\"dishes\":{" + dishes + "},\"setmeals\":{" + setmeals + "}},\"map\":{}}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        MenuSnapshot snapshot = new MenuSnapshot(bytes, gzip(bytes));
+
+        log.info("菜单快照构建完成：{}个分类，json{}字节，gzip{}字节，耗时{}毫秒", categories.size(), bytes.length,
+                snapshot.getGzip().length, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return snapshot;
+    }
+
+    // 获取片段json，Redis中没有时查询数据库并序列化后缓存60分钟
+    private String segment(String name, Supplier<Object> loader, String... tags) {
+        return cacheClient.get(CacheKeys.menuSegment(name), () -> toJson(loader.get()), 60, TimeUnit.MINUTES, tags);
+    }
+
+    private static void append(StringBuilder builder, Long categoryId, String segment) {
+        if (builder.length() > 0) {
+            builder.append(',');
+        }
+        builder.append('"').append(categoryId).append("\":").append(segment);
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new CustomException("菜单序列化失败");
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new CustomException("菜单压缩失败");
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+package com.codermast.takeoutfood.config;
+
+import com.codermast.takeoutfood.common.CompactRedisSerializer;
+import com.codermast.takeoutfood.common.ContentVersions;
+import com.codermast.takeoutfood.common.MenuNearCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * @Description: Redis配置类
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Configuration
+public class RedisConfig {
+
+    /**
+     * @Description: 配置值的紧凑序列化器
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Bean
+    public CompactRedisSerializer compactRedisSerializer() {
+        return new CompactRedisSerializer();
+    }
+
+    /**
+     * @Description: 配置RedisTemplate，key使用字符串序列化，value使用紧凑的二进制序列化代替默认的JDK序列化
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Bean
+    public RedisTemplate<Object, Object> redisTemplate(RedisConnectionFactory connectionFactory,
+                                                       CompactRedisSerializer compactRedisSerializer) {
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+
+        StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
+        redisTemplate.setKeySerializer(stringRedisSerializer);
+        redisTemplate.setHashKeySerializer(stringRedisSerializer);
+        redisTemplate.setValueSerializer(compactRedisSerializer);
+        redisTemplate.setHashValueSerializer(compactRedisSerializer);
+        return redisTemplate;
+    }
+
+    /**
+     * @Description: 配置Redis消息监听容器，订阅菜单缓存失效通知和内容版本号递增通知
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       MenuNearCache menuNearCache,
+                                                                       ContentVersions contentVersions) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(menuNearCache, new ChannelTopic(MenuNearCache.INVALIDATE_CHANNEL));
+        container.addMessageListener(contentVersions, new ChannelTopic(ContentVersions.BUMP_CHANNEL));
+        return container;
+    }
+}
@@ -1,10 +1,14 @@
 package com.codermast.takeoutfood.config;
 
+import com.codermast.takeoutfood.common.CacheWriteInterceptor;
+import com.codermast.takeoutfood.common.CachedJsonHttpMessageConverter;
 import com.codermast.takeoutfood.common.JacksonObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 
@@ -13,6 +17,8 @@ import java.util.List;
 @Slf4j
 @Configuration
 public class WebMvcConfig extends WebMvcConfigurationSupport {
+    @Autowired
+    private CacheWriteInterceptor cacheWriteInterceptor;
     /*
      * @Description: 静态资源映射
      * @param registry
@@ -25,6 +31,16 @@ public class WebMvcConfig extends WebMvcConfigurationSupport {
         registry.addResourceHandler("/front/**").addResourceLocations("classpath:/front/");     // 前台
     }
 
+    /**
+     * @Description: 注册拦截器，静态资源不涉及缓存修改
+     * @param registry 拦截器注册表
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    protected void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(cacheWriteInterceptor).excludePathPatterns("/backend/**", "/front/**");
+    }
+
     /**
      * @Description: 扩展mvc框架的消息转换器,主要的目的是将long转换成string，以便完整的记录long型的id
      * @param converters
@@ -41,6 +57,9 @@ public class WebMvcConfig extends WebMvcConfigurationSupport {
 
         // 将上面的消息转换器对象追加到mvc框架的转换器集合中
         converters.add(0,messageConverter);
+
+        // 缓存中序列化好的响应json直接输出，放在Jackson转换器之前
+        converters.add(0,new CachedJsonHttpMessageConverter());
     }
 
 
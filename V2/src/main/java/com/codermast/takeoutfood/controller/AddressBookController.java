@@ -3,15 +3,25 @@ package com.codermast.takeoutfood.controller;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.codermast.takeoutfood.common.BaseContext;
+import com.codermast.takeoutfood.common.CacheClient;
+import com.codermast.takeoutfood.common.CacheKeys;
+import com.codermast.takeoutfood.common.CacheWriteBuffer;
+import com.codermast.takeoutfood.common.CachedJson;
+import com.codermast.takeoutfood.common.ContentVersions;
+import com.codermast.takeoutfood.common.IdBloomFilter;
+import com.codermast.takeoutfood.common.JsonResponseCache;
 import com.codermast.takeoutfood.common.R;
 import com.codermast.takeoutfood.entity.AddressBook;
 import com.codermast.takeoutfood.service.AddressBookService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -29,39 +39,52 @@ public class AddressBookController {
     private AddressBookService addressBookService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private CacheWriteBuffer cacheWriteBuffer;
+
+    @Autowired
+    private ContentVersions contentVersions;
+
+    @Autowired
+    private CacheClient cacheClient;
+
+    @Autowired
+    private IdBloomFilter idBloomFilter;
+
+    @Autowired
+    private JsonResponseCache jsonResponseCache;
 
     /**
+     * @param webRequest 当前请求，用于比较ETag
+     * @param response 当前响应，用于设置缓存头
      * @Description: 获取地址列表
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @GetMapping("/list")
-    public R<List<AddressBook>> list() {
+    public CachedJson list(WebRequest webRequest, HttpServletResponse response) {
         // 从线程中获取用户id
         Long userId = BaseContext.getCurrentId();
-        // 构建返回对象
-        List<AddressBook> list = null;
-        String key = "addressBook:list:" + userId;
-        // 查询redis缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        list = (List<AddressBook>) opsForValue.get(key);
-
-        // 判断缓存是否命中
-        if (list != null) {
-            // 缓存命中
-            return R.success(list);
+        // 地址属于用户私有数据，只允许浏览器缓存且每次使用前需要验证，响应随登录会话不同而不同
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.COOKIE);
+        // 内容版本未变化，客户端缓存仍然有效，不查询缓存和数据库
+        if (webRequest.checkNotModified(contentVersions.etag("addressBook:user:" + userId, userId))){
+            return null;
         }
 
-        // 构建查询器
-        LambdaQueryWrapper<AddressBook> queryWrapper = new LambdaQueryWrapper<>();
-        // 添加查询条件
-        queryWrapper.eq(AddressBook::getUserId, userId);
-
-        list = addressBookService.list(queryWrapper);
-        // 将数据添加进缓存
-        opsForValue.set(key,list,60, TimeUnit.MINUTES);
+        // 构建返回对象
+        CachedJson list = null;
+        String key = CacheKeys.json(CacheKeys.addressBookList(userId));
+        // 查询redis中序列化好的响应，未命中时查询数据库并将数据添加进缓存
+        list = jsonResponseCache.get(key, () -> {
+            // 构建查询器
+            LambdaQueryWrapper<AddressBook> queryWrapper = new LambdaQueryWrapper<>();
+            // 添加查询条件
+            queryWrapper.eq(AddressBook::getUserId, userId);
+
+            return addressBookService.list(queryWrapper);
+        }, 60, TimeUnit.MINUTES, "addressBook:user:" + userId);
         // 返回数据
-        return R.success(list);
+        return list;
     }
 
     /**
@@ -77,10 +100,13 @@ public class AddressBookController {
         addressBook.setUserId(userId);
         // 添加地址
         addressBookService.save(addressBook);
+        idBloomFilter.put(IdBloomFilter.ADDRESS_BOOK, addressBook.getId());
 
-        // 添加进缓存
-        String key = "addressBook:one:" + addressBook.getId();
-        redisTemplate.opsForValue().set(key,addressBook,60,TimeUnit.MINUTES);
+        // 新地址出现在地址列表中，删除列表缓存并将新地址添加进缓存
+        cacheWriteBuffer.invalidate("addressBook:user:" + userId);
+        cacheWriteBuffer.bumpVersion("addressBook:user:" + userId);
+        String key = CacheKeys.addressBook(addressBook.getId());
+        cacheWriteBuffer.set(key, addressBook, 60, TimeUnit.MINUTES, "addressBook:user:" + userId);
         return R.success("保存成功");
     }
 
@@ -102,6 +128,10 @@ public class AddressBookController {
         // 指定需要改为默认的地址
         addressBook.setIsDefault(1);
         addressBookService.updateById(addressBook);
+
+        // 该用户所有地址的默认状态都可能变化
+        cacheWriteBuffer.invalidate("addressBook:user:" + userId);
+        cacheWriteBuffer.bumpVersion("addressBook:user:" + userId);
         return R.success("设置默认地址成功！");
     }
 
@@ -114,20 +144,15 @@ public class AddressBookController {
     public R<AddressBook> getAddressBookById(@PathVariable String id) {
         AddressBook addressBook = null;
 
-        String key = "addressBook:one:" + id;
-
-        // 查询缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        addressBook = (AddressBook) opsForValue.get(key);
+        String key = CacheKeys.addressBook(id);
 
-        // 判断缓存是否命中
-        // 命中，直接返回
-        if (addressBook != null){
-            return R.success(addressBook);
+        // 查询缓存，命中直接返回；未命中，查库、加缓存、返回
+        // 布隆过滤器判定id不存在时不查库，直接缓存空值
+        addressBook = cacheClient.get(key, () -> idBloomFilter.mightContain(IdBloomFilter.ADDRESS_BOOK, id)
+                ? addressBookService.getById(id) : null, 60, TimeUnit.MINUTES, "addressBook:user:" + BaseContext.getCurrentId());
+        if (addressBook == null){
+            return R.error("地址不存在");
         }
-        // 未命中，查库、加缓存、返回
-        addressBook = addressBookService.getById(id);
-        opsForValue.set(key,addressBook,60,TimeUnit.MINUTES);
         return R.success(addressBook);
     }
 
@@ -139,10 +164,11 @@ public class AddressBookController {
     @PutMapping
     public R<String> updateAddressBook(@RequestBody AddressBook addressBook) {
         addressBookService.updateById(addressBook);
-        String key = "addressBook:one:" + addressBook.getId();
-        // 更新缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        opsForValue.set(key,addressBook,60,TimeUnit.MINUTES);
+
+        // 删除该用户的地址列表和地址缓存，下次查询时重建
+        cacheWriteBuffer.delete(CacheKeys.addressBook(addressBook.getId()));
+        cacheWriteBuffer.invalidate("addressBook:user:" + BaseContext.getCurrentId());
+        cacheWriteBuffer.bumpVersion("addressBook:user:" + BaseContext.getCurrentId());
         return R.success("更新成功");
     }
 
@@ -156,10 +182,13 @@ public class AddressBookController {
         addressBookService.removeBatchByIds(ids);
 
         // 删除缓存
+        List<String> keys = new ArrayList<>();
         for (String id : ids) {
-            String key = "addressBook:one:" + id;
-            redisTemplate.delete(key);
+            keys.add(CacheKeys.addressBook(id));
         }
+        cacheWriteBuffer.delete(keys);
+        cacheWriteBuffer.invalidate("addressBook:user:" + BaseContext.getCurrentId());
+        cacheWriteBuffer.bumpVersion("addressBook:user:" + BaseContext.getCurrentId());
         return R.success("删除成功");
     }
 
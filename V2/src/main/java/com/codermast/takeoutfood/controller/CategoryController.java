@@ -2,15 +2,21 @@ package com.codermast.takeoutfood.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.codermast.takeoutfood.common.CacheKeys;
+import com.codermast.takeoutfood.common.CachedJson;
+import com.codermast.takeoutfood.common.CacheWriteBuffer;
+import com.codermast.takeoutfood.common.ContentVersions;
+import com.codermast.takeoutfood.common.JsonResponseCache;
+import com.codermast.takeoutfood.common.MenuNearCache;
 import com.codermast.takeoutfood.common.R;
 import com.codermast.takeoutfood.entity.Category;
 import com.codermast.takeoutfood.service.CategoryService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -29,7 +35,16 @@ public class CategoryController {
     CategoryService categoryService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuNearCache menuNearCache;
+
+    @Autowired
+    private CacheWriteBuffer cacheWriteBuffer;
+
+    @Autowired
+    private ContentVersions contentVersions;
+
+    @Autowired
+    private JsonResponseCache jsonResponseCache;
 
     /**
      * @Description: 获取分类信息
@@ -38,30 +53,29 @@ public class CategoryController {
      * @Author: CoderMast <a href="https://www.codermast.com/">...</a>
      */
     @GetMapping("/page")
-    public R<Page<Category>> page(int page, int pageSize){
-        String key = "category:page_" + page + ":pageSize_" + pageSize;
-        Page<Category> pageInfo = null;
+    public CachedJson page(int page, int pageSize){
+        String key = CacheKeys.json(CacheKeys.categoryPage(page, pageSize));
+        CachedJson pageInfo = null;
 
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        pageInfo = (Page<Category>) opsForValue.get(key);
-
-        // 缓存命中
+        // 本地缓存命中
+        pageInfo = (CachedJson) menuNearCache.get(key);
         if (pageInfo != null){
-            return R.success(pageInfo);
+            return pageInfo;
         }
+        long generation = menuNearCache.generation();
 
-        pageInfo = new Page<>(page,pageSize);
-
-        LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
-        // 增加排序条件
-        queryWrapper.orderByDesc(Category::getSort);
+        // 查询序列化好的响应缓存，未命中时查询数据库并添加缓存
+        pageInfo = jsonResponseCache.get(key, () -> {
+            Page<Category> categoryPage = new Page<>(page,pageSize);
 
-        categoryService.page(pageInfo,queryWrapper);
+            LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
+            // 增加排序条件
+            queryWrapper.orderByDesc(Category::getSort);
 
-        // 添加缓存
-        opsForValue.set(key,pageInfo,60, TimeUnit.MINUTES);
-        log.info(pageInfo.toString());
-        return R.success(pageInfo);
+            return categoryService.page(categoryPage,queryWrapper);
+        }, 60, TimeUnit.MINUTES, "category");
+        menuNearCache.put(key, pageInfo, generation);
+        return pageInfo;
     }
 
     /**
@@ -81,8 +95,12 @@ public class CategoryController {
 
         categoryService.save(category);
 
+        // 新分类出现在分类分页和分类列表中
+        cacheWriteBuffer.invalidate("category");
+
         // 增加缓存
-        redisTemplate.opsForValue().set("category:" + category.getId(),category,60,TimeUnit.MINUTES);
+        cacheWriteBuffer.set(CacheKeys.category(category.getId()), category, 60, TimeUnit.MINUTES, "category:" + category.getId());
+        cacheWriteBuffer.invalidateMenu();
         return R.success("创建成功");
     }
 
@@ -99,10 +117,14 @@ public class CategoryController {
         // 对于上述的优化
         categoryService.removeBatchByIds(ids);
 
-        // 删除缓存
+        // 删除依赖这些分类的缓存
+        List<String> tags = new ArrayList<>();
+        tags.add("category");
         for (Long id : ids) {
-            redisTemplate.delete("category:" + id);
+            tags.add("category:" + id);
         }
+        cacheWriteBuffer.invalidate(tags);
+        cacheWriteBuffer.invalidateMenu();
 
         return R.success("删除成功");
     }
@@ -120,39 +142,45 @@ public class CategoryController {
 
         categoryService.updateById(category);
 
-        // 更新缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        opsForValue.set("category:" + category.getId(),category);
+        // 分类名称出现在菜品、套餐的分页和菜品列表中，删除依赖该分类的缓存
+        cacheWriteBuffer.invalidate("category", "category:" + category.getId());
+        cacheWriteBuffer.invalidateMenu();
         return R.success("更新成功");
     }
 
     /**
+     * @param webRequest 当前请求，用于比较ETag
      * @Description: 获取菜品的分类类列表
      * @param type 类型
      * @Author: CoderMast <a href="https://www.codermast.com/">...</a>
      */
     @GetMapping("/list")
-    public R<List<Category>> list(Integer type){
-        List<Category> list = null;
-        String key = "category:dish:" + type;
+    public CachedJson list(Integer type, WebRequest webRequest){
+        // 内容版本未变化，客户端缓存仍然有效，不查询缓存和数据库
+        if (webRequest.checkNotModified(contentVersions.etag(ContentVersions.MENU))){
+            return null;
+        }
 
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        list = (List<Category>) opsForValue.get(key);
+        CachedJson list = null;
+        String key = CacheKeys.json(CacheKeys.categoryList(type));
 
-        // 缓存命中
+        // 本地缓存命中
+        list = (CachedJson) menuNearCache.get(key);
         if (list != null){
-            return R.success(list);
+            return list;
         }
+        long generation = menuNearCache.generation();
 
-        LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(type != null,Category::getType,type);
-        queryWrapper.orderByDesc(Category::getSort);
-
-        list = categoryService.list(queryWrapper);
+        // 查询序列化好的响应缓存，未命中时查询数据库并添加缓存
+        list = jsonResponseCache.get(key, () -> {
+            LambdaQueryWrapper<Category> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.eq(type != null,Category::getType,type);
+            queryWrapper.orderByDesc(Category::getSort);
 
-        // 添加缓存
-        opsForValue.set(key,list,60,TimeUnit.MINUTES);
+            return categoryService.list(queryWrapper);
+        }, 60, TimeUnit.MINUTES, "category");
+        menuNearCache.put(key, list, generation);
 
-        return R.success(list);
+        return list;
     }
 }
@@ -1,21 +1,42 @@
 package com.codermast.takeoutfood.controller;
 
+import com.codermast.takeoutfood.common.ImageByteCache;
 import com.codermast.takeoutfood.common.R;
+import com.codermast.takeoutfood.service.ImageService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload.FileCountLimitExceededException;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.UUID;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Description: 文件上传下载控制器
@@ -28,80 +49,187 @@ import java.util.UUID;
 @RequestMapping("/common")
 public class CommonController {
 
-    @Value("${takeout-food.images}")
-    private String imagesUrl;
+    // Tomcat sendfile相关的请求属性
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // 上传请求中除图片外的表单头等内容的最大字节数
+    private static final long UPLOAD_OVERHEAD_BYTES = 64 * 1024;
+
+    // 上传请求中最多允许的表单项数，图片之外只有少量普通字段
+    private static final long UPLOAD_MAX_PARTS = 10;
+
+    // 上传图片的最大字节数
+    @Value("${takeout-food.image-max-bytes:5242880}")
+    private long maxImageBytes;
+
+    // 图片的浏览器缓存时间，单位秒
+    @Value("${takeout-food.image-max-age:86400}")
+    private long imageMaxAge;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private ImageByteCache imageByteCache;
 
     /**
-     * @param file 上传的文件
-     * @Description: 文件上传
+     * @param request 上传请求，表单中的文件字段名为file
+     * @Description: 文件上传，按内容寻址保存，返回的文件名为内容的sha256加扩展名，相同的图片只保存一份。
+     * 已关闭Spring的multipart解析，这里边解析请求体边写入图片目录，上传的文件不会先暂存到临时目录再复制一次
      * @Author: CoderMast <a href="https://www.codermast.com/">...</a>
      */
     @PostMapping("/upload")
-    public R<String> upload(MultipartFile file) {
-        log.info("已经接收到文件，文件名为：" + imagesUrl + file.getOriginalFilename());
-        // 获取文件扩展名
-        String extension = file.getOriginalFilename().substring(file.getOriginalFilename().lastIndexOf("."));
-        log.info(extension);
-
-        // 创建指定目录的文件对象
-        File dir = new File(imagesUrl);
-        // 判断目录是否存在
-        if (!dir.exists()) {
-            // 不存在时，应该创建对应的目录，这里使用的是mkdirs方法，一次性创建多级目录。
-            dir.mkdirs();
+    public R<String> upload(HttpServletRequest request) throws IOException {
+        if (!ServletFileUpload.isMultipartContent(request)) {
+            return R.error("请选择要上传的图片");
         }
 
-        // 生成文件名
-        String uuidFileName = UUID.randomUUID().toString();
-
-        // 完整的文件名
-        String fileName = imagesUrl + uuidFileName + extension;
+        ServletFileUpload upload = new ServletFileUpload();
+        // 请求体除图片外只有少量表单头，超出时直接拒绝
+        upload.setSizeMax(maxImageBytes + UPLOAD_OVERHEAD_BYTES);
+        // 限制表单项数量，防止大量小表单项耗尽资源；流式解析时fileupload不检查该限制，由下面的循环计数
+        upload.setFileCountMax(UPLOAD_MAX_PARTS);
 
-
-        // 构建文件对象
-        File image = new File(fileName);
-
-        // 此时目录已经存在，将文件转存到该地址
+        String name = null;
+        long parts = 0;
         try {
-            file.transferTo(image);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            FileItemIterator iterator = upload.getItemIterator(request);
+            while (name == null && iterator.hasNext()) {
+                FileItemStream item = iterator.next();
+                if (++parts > upload.getFileCountMax()) {
+                    throw new FileCountLimitExceededException("表单项数量超出限制", upload.getFileCountMax());
+                }
+                if (item.isFormField() || !"file".equals(item.getFieldName())) {
+                    continue;
+                }
+                log.info("已经接收到文件，文件名为：" + item.getName());
+                try (InputStream inputStream = item.openStream()) {
+                    name = imageService.save(inputStream, item.getName());
+                }
+            }
+        } catch (FileUploadBase.SizeLimitExceededException e) {
+            return R.error("图片大小不能超过" + maxImageBytes / 1024 + "KB");
+        } catch (FileCountLimitExceededException e) {
+            return R.error("上传的表单项过多");
+        } catch (FileUploadException e) {
+            log.warn("上传请求解析失败：{}", e.getMessage());
+            return R.error("图片上传失败");
         }
-        return R.success(uuidFileName + extension);
+
+        if (name == null) {
+            return R.error("请选择要上传的图片");
+        }
+
+        // 后台生成各尺寸的图片
+        imageService.generateVariants(name);
+        return R.success(name);
     }
 
     /**
      * @param name 文件名称
-     * @Description: 文件下载回显给页面
+     * @param size 图片尺寸，thumb为缩略图，list为列表图，detail为详情图，为空时返回原图
+     * @Description: 文件下载回显给页面，支持Range断点续传和If-Modified-Since协商缓存。
+     * 热点图片从本地字节缓存的直接内存中发送，其余磁盘上的图片优先交给Tomcat的sendfile发送，文件内容不经过JVM堆
      * @Author: CoderMast <a href="https://www.codermast.com/">...</a>
      */
     @GetMapping("/download")
-    public void download(String name, HttpServletResponse response) {
-        String imgUrl = imagesUrl + name;
-
-        // 获取resources目录下的文件资源
-        ClassPathResource classPathResource = new ClassPathResource(imgUrl);
+    public void download(String name, String size, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Resource image = imageService.getImage(name, size);
+        if (image == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-        try {
-            // 获取文件的输入流
-            InputStream fileInputStream = classPathResource.getInputStream();
+        // 命中时长度和修改时间都取自缓存，不再读取文件
+        ImageByteCache.Entry cached = imageByteCache.get(image);
+        long length = cached != null ? cached.getLength() : image.contentLength();
+        long lastModified = cached != null ? cached.getLastModified() : image.lastModified();
+        // 内容寻址的图片地址不变则内容不变，缓存一年且浏览器无需再验证；当前Spring版本的CacheControl不支持immutable，手动追加
+        String cacheControl = imageService.isImmutable(name, size, image)
+                ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable"
+                : CacheControl.maxAge(imageMaxAge, TimeUnit.SECONDS).cachePublic().getHeaderValue();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        // 图片在浏览器缓存之后没有修改过，返回304，同时写入Last-Modified
+        if (new ServletWebRequest(request, response).checkNotModified(lastModified)) {
+            return;
+        }
+        response.setContentType(MediaTypeFactory.getMediaType(image).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        // 默认返回整个文件，只带一个区间的Range请求返回该区间，多个区间时返回整个文件
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(range);
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+        response.setContentLengthLong(end - start + 1);
 
-            // 输出流，将读取到的文件输出到浏览器页面上
-            ServletOutputStream outputStream = response.getOutputStream();
-            int len = 0;
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (cached != null) {
+            write(cached.slice(start, end), response);
+        } else {
+            transfer(image, start, end, request, response);
+        }
+    }
 
-            byte[] bytes = new byte[1024];
+    // 将缓存中的图片区间写入响应
+    private void write(ByteBuffer buffer, HttpServletResponse response) throws IOException {
+        WritableByteChannel outputChannel = Channels.newChannel(response.getOutputStream());
+        while (buffer.hasRemaining()) {
+            outputChannel.write(buffer);
+        }
+    }
 
-            while ((len = fileInputStream.read(bytes)) != -1){
-                outputStream.write(bytes,0,len);
+    // 发送图片的[start, end]区间：支持sendfile时由Tomcat直接从文件发送到网络；
+    // 否则磁盘文件使用FileChannel.transferTo，打包在jar中的图片使用流拷贝
+    private void transfer(Resource image, long start, long end, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!image.isFile()) {
+            try (InputStream inputStream = image.getInputStream()) {
+                StreamUtils.copyRange(inputStream, response.getOutputStream(), start, end);
             }
-            outputStream.flush();
+            return;
+        }
 
-            // 关闭资源
-            fileInputStream.close();
-            outputStream.close();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        File file = image.getFile();
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, start);
+            // sendfile的结束位置不包含在内
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel outputChannel = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, outputChannel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
         }
     }
 }
@@ -3,22 +3,28 @@ package com.codermast.takeoutfood.controller;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.codermast.takeoutfood.common.CacheClient;
+import com.codermast.takeoutfood.common.CacheKeys;
+import com.codermast.takeoutfood.common.CachedJson;
+import com.codermast.takeoutfood.common.CacheWriteBuffer;
+import com.codermast.takeoutfood.common.ContentVersions;
+import com.codermast.takeoutfood.common.IdBloomFilter;
+import com.codermast.takeoutfood.common.JsonResponseCache;
+import com.codermast.takeoutfood.common.MenuNearCache;
 import com.codermast.takeoutfood.common.R;
 import com.codermast.takeoutfood.dto.DishDto;
-import com.codermast.takeoutfood.entity.Category;
 import com.codermast.takeoutfood.entity.Dish;
-import com.codermast.takeoutfood.entity.DishFlavor;
 import com.codermast.takeoutfood.service.CategoryService;
-import com.codermast.takeoutfood.service.DishFlavorService;
 import com.codermast.takeoutfood.service.DishService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -36,15 +42,27 @@ public class DishController {
     @Autowired
     private DishService dishService;
 
-    @Autowired
-    private DishFlavorService dishFlavorService;
-
     // 注入category实体
     @Autowired
     private CategoryService categoryService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuNearCache menuNearCache;
+
+    @Autowired
+    private CacheClient cacheClient;
+
+    @Autowired
+    private CacheWriteBuffer cacheWriteBuffer;
+
+    @Autowired
+    private ContentVersions contentVersions;
+
+    @Autowired
+    private IdBloomFilter idBloomFilter;
+
+    @Autowired
+    private JsonResponseCache jsonResponseCache;
 
     /**
      * @param page     页码
@@ -54,22 +72,38 @@ public class DishController {
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @GetMapping("/page")
-    public R<Page<DishDto>> page(int page, int pageSize, String name) {
-
-        Page<DishDto> dishDtoPage = null;
-        String key = "page_" + page + ":pageSize_" + pageSize + ":name_" + name;
-        ValueOperations opsForValue = redisTemplate.opsForValue();
+    public CachedJson page(int page, int pageSize, String name) {
 
-        dishDtoPage = (Page<DishDto>) opsForValue.get(key);
+        CachedJson dishDtoPage = null;
+        String key = CacheKeys.json(CacheKeys.dishPage(page, pageSize, name));
 
-        // 缓存命中
+        // 本地缓存命中
+        dishDtoPage = (CachedJson) menuNearCache.get(key);
         if (dishDtoPage != null){
-            return R.success(dishDtoPage);
+            return dishDtoPage;
         }
+        long generation = menuNearCache.generation();
+
+        // 查询Redis中序列化好的响应，未命中时查询数据库并缓存60分钟
+        // 分页数据依赖全部菜品及分类名称
+        dishDtoPage = jsonResponseCache.get(key, () -> queryPage(page, pageSize, name), 60, TimeUnit.MINUTES,
+                "dish", "category");
+        menuNearCache.put(key, dishDtoPage, generation);
+        return dishDtoPage;
+    }
+
+    /**
+     * @param page     页码
+     * @param pageSize 页面大小
+     * @param name     关键词
+     * @Description: 从数据库分页查询dish内容，并填充分类名称
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    private Page<DishDto> queryPage(int page, int pageSize, String name) {
         // 菜品分页页面
         Page<Dish> dishPage = new Page<>(page,pageSize);
         // 菜品分页交互对象页面
-        dishDtoPage = new Page<>();
+        Page<DishDto> dishDtoPage = new Page<>();
 
         // 构造条件过滤器
         LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
@@ -81,6 +115,10 @@ public class DishController {
         // 菜品分页记录值
         List<Dish> recordsDish = dishPage.getRecords();
 
+        // 批量查询本页涉及的分类名称，避免逐条查询分类
+        Map<Long, String> categoryNameMap = categoryService.getNameMapByIds(
+                recordsDish.stream().map(Dish::getCategoryId).collect(Collectors.toList()));
+
         // 菜品分页交互对象记录值
         List<DishDto> recordsDishDto = recordsDish.stream().map((item) -> {
             // 创建dishDto对象
@@ -89,17 +127,8 @@ public class DishController {
             // 将Dish类型的item属性赋值到dishDto
             BeanUtils.copyProperties(item,dishDto);
 
-            // 获取对象的分类id
-            Long categoryId = dishDto.getCategoryId();
-
-            // 根据分类id查分类对象
-            Category categoryServiceById = categoryService.getById(categoryId);
-
-            // 从分类对象中取出分类名称
-            String categoryServiceByIdName = categoryServiceById.getName();
-
-            // 设置分类名称到dishDto对象
-            dishDto.setCategoryName(categoryServiceByIdName);
+            // 从分类名称映射中取出分类名称，设置到dishDto对象
+            dishDto.setCategoryName(categoryNameMap.get(dishDto.getCategoryId()));
 
             // 返回该对象
             return dishDto;
@@ -110,9 +139,7 @@ public class DishController {
         // 将总条数赋值给dishDtoPage
         dishDtoPage.setTotal(dishPage.getTotal());
 
-        // 将数据缓存进redis
-        opsForValue.set(key,dishDtoPage,60,TimeUnit.MINUTES);
-        return R.success(dishDtoPage);
+        return dishDtoPage;
     }
 
     /**
@@ -122,13 +149,20 @@ public class DishController {
      */
     @DeleteMapping
     public R<String> delete(@RequestParam List<Long> ids) {
+        // 删除前查出菜品所属分类，用于删除分类下的菜品列表缓存
+        List<Dish> dishes = dishService.listByIds(ids);
         dishService.removeBatchByIds(ids);
 
-        // 删除redis缓存
-        for (Long id : ids) {
-            String key = "dish:" + id;
-            redisTemplate.delete(key);
+        // 删除依赖这些菜品的redis缓存
+        List<String> tags = new ArrayList<>();
+        tags.add("dish");
+        for (Dish dish : dishes) {
+            tags.add("dish:" + dish.getId());
+            tags.add("dish:category:" + dish.getCategoryId());
         }
+        cacheWriteBuffer.invalidate(tags);
+        // 通知所有节点清空菜单本地缓存
+        cacheWriteBuffer.invalidateMenu();
 
         return R.success("批量删除成功！");
     }
@@ -141,21 +175,23 @@ public class DishController {
     @GetMapping("/{id}")
     public R<DishDto> getOne(@PathVariable String id) {
         DishDto dishDto = null;
-        String key = "dish:" + id;
+        String key = CacheKeys.dish(id);
 
-        // 先查询Redis中是否有缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        dishDto = (DishDto) opsForValue.get(key);
-        // Redis中存在则直接返回
+        // 先查询本地缓存
+        dishDto = (DishDto) menuNearCache.get(key);
         if (dishDto != null){
             return R.success(dishDto);
         }
-
-        // Redis中不存在，先查数据库，然后添加缓存，再返回
-        dishDto = dishService.getByIdWithFlavor(id);
-
-        // 放入缓存，并设置60分钟后失效
-        opsForValue.set(key,dishDto,60, TimeUnit.MINUTES);
+        long generation = menuNearCache.generation();
+
+        // 再查询Redis缓存，不存在时查数据库，放入缓存并设置60分钟后失效
+        // 布隆过滤器判定id不存在时不查库，直接缓存空值
+        dishDto = cacheClient.get(key, () -> idBloomFilter.mightContain(IdBloomFilter.DISH, id)
+                ? dishService.getByIdWithFlavor(id) : null, 60, TimeUnit.MINUTES, "dish:" + id);
+        if (dishDto == null){
+            return R.error("菜品不存在");
+        }
+        menuNearCache.put(key, dishDto, generation);
 
         return R.success(dishDto);
     }
@@ -167,12 +203,16 @@ public class DishController {
     @PostMapping
     public R<String> save(@RequestBody DishDto dishDto) {
         dishService.saveWithFlavor(dishDto);
-        ValueOperations opsForValue = redisTemplate.opsForValue();
+        idBloomFilter.put(IdBloomFilter.DISH, dishDto.getId());
 
-        String key = "dish:" + dishDto.getId();
+        // 新菜品出现在分页和所属分类的菜品列表中
+        cacheWriteBuffer.invalidate("dish", "dish:category:" + dishDto.getCategoryId());
+
+        String key = CacheKeys.dish(dishDto.getId());
 
         // 将数据缓存进Redis，设置60分过期
-        opsForValue.set(key,dishDto,60,TimeUnit.MINUTES);
+        cacheWriteBuffer.set(key, dishDto, 60, TimeUnit.MINUTES, "dish:" + dishDto.getId());
+        cacheWriteBuffer.invalidateMenu();
 
         return R.success("菜品添加成功");
     }
@@ -184,13 +224,8 @@ public class DishController {
      */
     @PutMapping
     public R<String> update(@RequestBody DishDto dishDto){
-        boolean ret = dishService.updateById(dishDto);
-
-        String key = "dish:" + dishDto.getId();
-        // 更新Redis缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        // 放入缓存，设置60分钟失效
-        opsForValue.set(key,dishDto,60,TimeUnit.MINUTES);
+        // 菜品和口味在同一个事务中修改，缓存在事务提交后刷新
+        boolean ret = dishService.updateWithFlavor(dishDto);
 
         return ret? R.success("更新成功"):R.error("更新失败");
     }
@@ -203,81 +238,54 @@ public class DishController {
      */
     @PostMapping("/status/{status}")
     public R<String> status(@PathVariable Integer status,@RequestParam List<Long> ids){
+        // 只查询菜品所属分类，用于删除分类下的菜品列表缓存
         LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
-
-        queryWrapper.in(ids != null,Dish::getId,ids);
-
+        queryWrapper.select(Dish::getId,Dish::getCategoryId);
+        queryWrapper.in(Dish::getId,ids);
         List<Dish> list = dishService.list(queryWrapper);
 
+        // 一条UPDATE批量修改状态
+        dishService.updateStatusByIds(status,ids);
+
+        List<String> tags = new ArrayList<>();
+        tags.add("dish");
         for (Dish dish : list) {
-            if (dish != null){
-                dish.setStatus(status);
-                dishService.updateById(dish);
-            }
+            tags.add("dish:" + dish.getId());
+            tags.add("dish:category:" + dish.getCategoryId());
         }
+        cacheWriteBuffer.invalidate(tags);
+        cacheWriteBuffer.invalidateMenu();
         return R.success(status == 1? "启售成功" : "停售成功");
     }
 
     /**
+     * @param webRequest 当前请求，用于比较ETag
      * @Description: 根据分类id查询其下的菜品
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @GetMapping("/list")
-    public R<List<DishDto>> list(Dish dish){
-        List<DishDto> dishDtoList = null;
-
-        // 先从redis中获取缓存数据
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-
-        String key = "dish:" + dish.getCategoryId();
-        // 这里缓存的key是dish的分类id，Value为其序列化的值
-        dishDtoList = (List<DishDto>) opsForValue.get(key);
-        // redis中存在数据，则直接返回，无需查询数据库
-        if (dishDtoList != null){
-            log.info("Redis中有缓存，获取的是缓存数据");
-            return R.success(dishDtoList);
+    public CachedJson list(Dish dish, WebRequest webRequest){
+        // 内容版本未变化，客户端缓存仍然有效，不查询缓存和数据库
+        if (webRequest.checkNotModified(contentVersions.etag(ContentVersions.MENU))){
+            return null;
         }
 
-        //构造查询条件
-        LambdaQueryWrapper<Dish> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(dish.getCategoryId() != null ,Dish::getCategoryId,dish.getCategoryId());
-        //添加条件，查询状态为1（起售状态）的菜品
-        queryWrapper.eq(Dish::getStatus,1);
-
-        //添加排序条件
-        queryWrapper.orderByAsc(Dish::getSort).orderByDesc(Dish::getUpdateTime);
-
-        List<Dish> list = dishService.list(queryWrapper);
-
-        dishDtoList = list.stream().map((item) -> {
-            DishDto dishDto = new DishDto();
-
-            BeanUtils.copyProperties(item,dishDto);
-
-            Long categoryId = item.getCategoryId();//分类id
-            //根据id查询分类对象
-            Category category = categoryService.getById(categoryId);
-
-            if(category != null){
-                String categoryName = category.getName();
-                dishDto.setCategoryName(categoryName);
-            }
-
-            //当前菜品的id
-            Long dishId = item.getId();
-            LambdaQueryWrapper<DishFlavor> lambdaQueryWrapper = new LambdaQueryWrapper<>();
-            lambdaQueryWrapper.eq(DishFlavor::getDishId,dishId);
-            //SQL:select * from dish_flavor where dish_id = ?
-            List<DishFlavor> dishFlavorList = dishFlavorService.list(lambdaQueryWrapper);
-            dishDto.setFlavors(dishFlavorList);
-            return dishDto;
-        }).collect(Collectors.toList());
+        CachedJson dishDtoList = null;
 
-        //redis中不存在数据，则先查询数据库，然后将数据缓存进redis中，在返回数据
+        String key = CacheKeys.json(CacheKeys.dishList(dish.getCategoryId()));
 
-        // 将数据存入缓存，设置60分钟失效
-        opsForValue.set(key,dishDtoList,60,TimeUnit.MINUTES);
-        log.info("Redis中没有缓存，查询了数据库");
-        return R.success(dishDtoList);
+        // 本地缓存中存在数据，则直接返回
+        dishDtoList = (CachedJson) menuNearCache.get(key);
+        if (dishDtoList != null){
+            return dishDtoList;
+        }
+        long generation = menuNearCache.generation();
+
+        // 这里缓存的key是dish的分类id，Value为序列化好的响应json
+        // redis中不存在数据，则查询起售的菜品及其口味(至多两条SQL)，并将数据存入缓存，设置60分钟失效
+        dishDtoList = jsonResponseCache.get(key, () -> dishService.listWithFlavor(dish.getCategoryId()), 60, TimeUnit.MINUTES,
+                "dish:category:" + dish.getCategoryId(), "category:" + dish.getCategoryId());
+        menuNearCache.put(key, dishDtoList, generation);
+        return dishDtoList;
     }
 }
@@ -4,6 +4,12 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.codermast.takeoutfood.common.BaseContext;
+import com.codermast.takeoutfood.common.CacheClient;
+import com.codermast.takeoutfood.common.CacheKeys;
+import com.codermast.takeoutfood.common.CacheWriteBuffer;
+import com.codermast.takeoutfood.common.CachedJson;
+import com.codermast.takeoutfood.common.IdBloomFilter;
+import com.codermast.takeoutfood.common.JsonResponseCache;
 import com.codermast.takeoutfood.common.R;
 import com.codermast.takeoutfood.entity.Employee;
 import com.codermast.takeoutfood.service.EmployeeService;
@@ -34,6 +40,18 @@ public class EmployeeController {
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private CacheClient cacheClient;
+
+    @Autowired
+    private CacheWriteBuffer cacheWriteBuffer;
+
+    @Autowired
+    private IdBloomFilter idBloomFilter;
+
+    @Autowired
+    private JsonResponseCache jsonResponseCache;
+
     /**
      * @param employee 登录信息封装对象
      * @Description: 员工登录
@@ -67,7 +85,7 @@ public class EmployeeController {
 
         //6、登录成功，将员工id存入redis并返回登录成功结果
         ValueOperations opsForValue = redisTemplate.opsForValue();
-        String key ="employee:login:" + emp.getId();
+        String key =CacheKeys.employeeLogin(emp.getId());
         opsForValue.set(key,emp,30, TimeUnit.MINUTES);
 
         BaseContext.setCurrentId(emp.getId());
@@ -81,7 +99,7 @@ public class EmployeeController {
      */
     @PostMapping("/logout")
     public R<String> logout() {
-        String key ="employee:login:" + BaseContext.getCurrentId();
+        String key =CacheKeys.employeeLogin(BaseContext.getCurrentId());
 
         redisTemplate.delete(key);
         return R.success("退出成功");
@@ -110,10 +128,14 @@ public class EmployeeController {
         employee.setUpdateUser(curUserId);
 
         employeeService.save(employee);
+        idBloomFilter.put(IdBloomFilter.EMPLOYEE, employee.getId());
+
+        // 新员工出现在员工分页中
+        cacheWriteBuffer.invalidate("employee");
 
         // 缓存进redis中
-        String key = "employee:cached:" + employee.getId();
-        redisTemplate.opsForValue().set(key,employee,30,TimeUnit.MINUTES);
+        String key = CacheKeys.employee(employee.getId());
+        cacheWriteBuffer.set(key, employee, 30, TimeUnit.MINUTES, "employee:" + employee.getId());
         return R.success("新增员工成功");
     }
 
@@ -125,36 +147,30 @@ public class EmployeeController {
      * @Author: CoderMast <a href="https://www.codermast.com/">...</a>
      */
     @GetMapping("/page")
-    public R<Page<Employee>> page(int page, int pageSize, String name) {
+    public CachedJson page(int page, int pageSize, String name) {
 
-        Page<Employee> pageInfo = null;
+        CachedJson pageInfo = null;
         log.info(page + ":" + pageSize + ":" + name);
 
-        String key = "page_" + page + ":pageSize_" + pageSize + ":name_" + name;
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        pageInfo = (Page<Employee>) opsForValue.get(key);
+        String key = CacheKeys.json(CacheKeys.employeePage(page, pageSize, name));
 
-        if (pageInfo != null){
-            return R.success(pageInfo);
-        }
-
-        // 构造分页构造器
-        pageInfo = new Page<>(page,pageSize);
+        // 查询序列化好的响应缓存，未命中时查询数据库并将数据缓存进redis
+        pageInfo = jsonResponseCache.get(key, () -> {
+            // 构造分页构造器
+            Page<Employee> employeePage = new Page<>(page,pageSize);
 
-        // 构造条件过滤器
-        LambdaQueryWrapper<Employee> queryWrapper = new LambdaQueryWrapper<>();
+            // 构造条件过滤器
+            LambdaQueryWrapper<Employee> queryWrapper = new LambdaQueryWrapper<>();
 
-        // 添加查询条件
-        queryWrapper.like(StringUtils.isNotEmpty(name),Employee::getName,name);
+            // 添加查询条件
+            queryWrapper.like(StringUtils.isNotEmpty(name),Employee::getName,name);
 
-        // 添加排序条件
-        queryWrapper.orderByDesc(Employee::getUpdateTime);
+            // 添加排序条件
+            queryWrapper.orderByDesc(Employee::getUpdateTime);
 
-        employeeService.page(pageInfo,queryWrapper);
-
-        // 将数据缓存进redis
-        opsForValue.set(key,pageInfo,30,TimeUnit.MINUTES);
-        return R.success(pageInfo);
+            return employeeService.page(employeePage,queryWrapper);
+        }, 30, TimeUnit.MINUTES, "employee");
+        return pageInfo;
     }
 
     /**
@@ -167,9 +183,8 @@ public class EmployeeController {
         log.info(employee.toString());
         employeeService.updateById(employee);
 
-        // 缓存进redis中
-        String key = "employee:cached:" + employee.getId();
-        redisTemplate.opsForValue().set(key,employee,30,TimeUnit.MINUTES);
+        // 前端只传了部分字段，删除该员工的缓存和员工分页缓存，下次查询时重建
+        cacheWriteBuffer.invalidate("employee", "employee:" + employee.getId());
         return R.success("员工信息修改成功");
     }
     /**
@@ -181,18 +196,12 @@ public class EmployeeController {
     public R<Employee> getById(@PathVariable Long id){
         Employee employee = null;
 
-        String key = "employee:cached:" + id;
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        employee = (Employee) opsForValue.get(key);
-        // 缓存命中
-        if (employee != null){
-            return R.success(employee);
-        }
-
-        employee = employeeService.getById(id);
+        String key = CacheKeys.employee(id);
+        // 查询缓存，未命中时查询数据库，并缓存
+        // 布隆过滤器判定id不存在时不查库，直接缓存空值
+        employee = cacheClient.get(key, () -> idBloomFilter.mightContain(IdBloomFilter.EMPLOYEE, id)
+                ? employeeService.getById(id) : null, 30, TimeUnit.MINUTES, "employee:" + id);
         if (employee != null) {
-            // 缓存未命中,查询数据库，并缓存
-            opsForValue.set(key,employee,30,TimeUnit.MINUTES);
             return R.success(employee);
         }
         return R.error("没有该用户！");
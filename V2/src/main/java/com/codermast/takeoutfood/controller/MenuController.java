@@ -0,0 +1,67 @@
+package com.codermast.takeoutfood.controller;
+
+import com.codermast.takeoutfood.common.ContentVersions;
+import com.codermast.takeoutfood.common.MenuSnapshot;
+import com.codermast.takeoutfood.common.MenuSnapshotBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * @Description: 菜单控制器，一次返回用户端需要的完整菜单
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@RestController
+@RequestMapping("/menu")
+public class MenuController {
+    @Autowired
+    private MenuSnapshotBuilder menuSnapshotBuilder;
+
+    @Autowired
+    private ContentVersions contentVersions;
+
+    /**
+     * @Description: 获取菜单快照，直接输出预先序列化和压缩好的字节；菜单版本未变化时返回304
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @GetMapping("/snapshot")
+    public void snapshot(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // 先取版本号再取快照，快照不会比ETag代表的版本更旧
+        String etag = contentVersions.etag(ContentVersions.MENU);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        // 客户端缓存的快照仍是最新的，不需要构建快照
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        MenuSnapshot snapshot = menuSnapshotBuilder.get();
+
+        byte[] body = snapshot.getJson();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = snapshot.getGzip();
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -69,13 +69,27 @@ public class OrderController {
     }
 
     /**
-     * @Description: 提交订单
+     * @Description: 提交订单，订单异步写入，返回订单号用于查询提交状态
      * @param order  订单封装
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @PostMapping("/submit")
-    public R<String> submit(@RequestBody Order order){
-        orderService.submit(order);
-        return R.success("下单成功");
+    public R<Long> submit(@RequestBody Order order){
+        Long orderId = orderService.submit(order);
+        return R.success(orderId);
+    }
+
+    /**
+     * @Description: 查询订单的提交状态
+     * @param id 订单号
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @GetMapping("/status/{id}")
+    public R<String> status(@PathVariable Long id){
+        String status = orderService.getSubmitStatus(id);
+        if (status == null) {
+            return R.error("订单不存在");
+        }
+        return R.success(status);
     }
 }
@@ -4,20 +4,28 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.codermast.takeoutfood.common.BaseContext;
+import com.codermast.takeoutfood.common.CacheClient;
+import com.codermast.takeoutfood.common.CacheKeys;
+import com.codermast.takeoutfood.common.CachedJson;
+import com.codermast.takeoutfood.common.CacheWriteBuffer;
+import com.codermast.takeoutfood.common.ContentVersions;
+import com.codermast.takeoutfood.common.IdBloomFilter;
+import com.codermast.takeoutfood.common.JsonResponseCache;
+import com.codermast.takeoutfood.common.MenuNearCache;
 import com.codermast.takeoutfood.common.R;
 import com.codermast.takeoutfood.dto.SetMealDto;
-import com.codermast.takeoutfood.entity.Category;
 import com.codermast.takeoutfood.entity.SetMeal;
 import com.codermast.takeoutfood.service.CategoryService;
 import com.codermast.takeoutfood.service.SetMealService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -37,7 +45,23 @@ public class SetmealController {
     CategoryService categoryService;
 
     @Autowired
-    RedisTemplate redisTemplate;
+    MenuNearCache menuNearCache;
+
+    @Autowired
+    CacheClient cacheClient;
+
+    @Autowired
+    CacheWriteBuffer cacheWriteBuffer;
+
+    @Autowired
+    ContentVersions contentVersions;
+
+    @Autowired
+    IdBloomFilter idBloomFilter;
+
+    @Autowired
+    JsonResponseCache jsonResponseCache;
+
     /**
      * @Description: 分页获取套餐信息
      * @param page 页码
@@ -46,20 +70,35 @@ public class SetmealController {
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @GetMapping("/page")
-    public R<Page<SetMealDto>> page(int page, int pageSize, String name){
-        String key = "category:page_" + page + ":pageSize_" + pageSize + ":name_" + name;
-        // 查询缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
-        Page<SetMealDto> setMealDtoPage = null;
-        setMealDtoPage = (Page<SetMealDto>) opsForValue.get(key);
-
-        // 缓存命中
+    public CachedJson page(int page, int pageSize, String name){
+        String key = CacheKeys.json(CacheKeys.setmealPage(page, pageSize, name));
+        CachedJson setMealDtoPage = null;
+
+        // 查询本地缓存
+        setMealDtoPage = (CachedJson) menuNearCache.get(key);
         if (setMealDtoPage != null){
-            return R.success(setMealDtoPage);
+            return setMealDtoPage;
         }
+        long generation = menuNearCache.generation();
+
+        // 查询序列化好的响应缓存，未命中时查询数据库并存入缓存
+        // 分页数据依赖全部套餐及分类名称
+        setMealDtoPage = jsonResponseCache.get(key, () -> queryPage(page, pageSize, name), 60, TimeUnit.MINUTES,
+                "setmeal", "category");
+        menuNearCache.put(key, setMealDtoPage, generation);
+        return setMealDtoPage;
+    }
 
+    /**
+     * @Description: 从数据库分页查询套餐信息，并填充分类名称
+     * @param page 页码
+     * @param pageSize 页面大小
+     * @param name 关键词
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    private Page<SetMealDto> queryPage(int page, int pageSize, String name){
         Page<SetMeal> setMealPage = new Page<>(page,pageSize);
-        setMealDtoPage = new Page<>();
+        Page<SetMealDto> setMealDtoPage = new Page<>();
 
 
         LambdaQueryWrapper<SetMeal> queryWrapper = new LambdaQueryWrapper<>();
@@ -69,14 +108,15 @@ public class SetmealController {
 
         List<SetMeal> setMealPageRecords = setMealPage.getRecords();
 
+        // 批量查询本页涉及的分类名称
+        Map<Long, String> categoryNameMap = categoryService.getNameMapByIds(
+                setMealPageRecords.stream().map(SetMeal::getCategoryId).collect(Collectors.toList()));
+
         List<SetMealDto> setMealDtoPageRecords = setMealPageRecords.stream().map((item) -> {
             SetMealDto setMealDto = new SetMealDto();
 
             BeanUtils.copyProperties(item, setMealDto);
-            Long setMealDtoCategoryId = setMealDto.getCategoryId();
-
-            Category category = categoryService.getById(setMealDtoCategoryId);
-            setMealDto.setCategoryName(category.getName());
+            setMealDto.setCategoryName(categoryNameMap.get(setMealDto.getCategoryId()));
 
             return setMealDto;
         }).collect(Collectors.toList());
@@ -84,9 +124,7 @@ public class SetmealController {
         setMealDtoPage.setTotal(setMealPage.getTotal());
         setMealDtoPage.setRecords(setMealDtoPageRecords);
 
-        // 存入缓存
-        opsForValue.set(key,setMealDtoPage,60, TimeUnit.MINUTES);
-        return R.success(setMealDtoPage);
+        return setMealDtoPage;
     }
 
     /**
@@ -96,21 +134,24 @@ public class SetmealController {
      */
     @GetMapping("/{id}")
     public R<SetMealDto> getByIdWithSetMealDto(@PathVariable String id){
-        // 查询缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
         SetMealDto byIdWithSetMealDto = null;
-        String key = "setMealDto:id:" + id;
-        byIdWithSetMealDto = (SetMealDto) opsForValue.get(key);
+        String key = CacheKeys.setmeal(id);
 
-        // 缓存命中
+        // 查询本地缓存
+        byIdWithSetMealDto = (SetMealDto) menuNearCache.get(key);
         if (byIdWithSetMealDto != null){
             return R.success(byIdWithSetMealDto);
         }
-
-        byIdWithSetMealDto = setMealService.getByIdWithSetMealDto(id);
-
-        // 存入缓存
-        opsForValue.set(key,byIdWithSetMealDto,60,TimeUnit.MINUTES);
+        long generation = menuNearCache.generation();
+
+        // 查询缓存，未命中时查询数据库并存入缓存
+        // 布隆过滤器判定id不存在时不查库，直接缓存空值
+        byIdWithSetMealDto = cacheClient.get(key, () -> idBloomFilter.mightContain(IdBloomFilter.SETMEAL, id)
+                ? setMealService.getByIdWithSetMealDto(id) : null, 60, TimeUnit.MINUTES, "setmeal:" + id);
+        if (byIdWithSetMealDto == null){
+            return R.error("套餐不存在");
+        }
+        menuNearCache.put(key, byIdWithSetMealDto, generation);
         return R.success(byIdWithSetMealDto);
     }
 
@@ -122,10 +163,15 @@ public class SetmealController {
     @PostMapping
     public R<String> save(@RequestBody SetMealDto setMealDto){
         setMealService.saveByIdWithSetMealDto(setMealDto);
+        idBloomFilter.put(IdBloomFilter.SETMEAL, setMealDto.getId());
+
+        // 新套餐出现在分页和所属分类的套餐列表中
+        cacheWriteBuffer.invalidate("setmeal", "setmeal:category:" + setMealDto.getCategoryId());
 
         // 存入缓存
-        String key = "setMealDto:id:" + setMealDto.getId();
-        redisTemplate.opsForValue().set(key,setMealDto,60,TimeUnit.MINUTES);
+        String key = CacheKeys.setmeal(setMealDto.getId());
+        cacheWriteBuffer.set(key, setMealDto, 60, TimeUnit.MINUTES, "setmeal:" + setMealDto.getId());
+        cacheWriteBuffer.invalidateMenu();
         return R.success("创建成功");
     }
 
@@ -136,11 +182,17 @@ public class SetmealController {
      */
     @PutMapping
     public R<String> updateWithDish(@RequestBody SetMealDto setMealDto, HttpServletRequest request){
+        // 修改前的套餐，分类可能发生变化，新旧分类的套餐列表都需要删除
+        SetMeal oldSetMeal = setMealService.getById(setMealDto.getId());
         boolean ret = setMealService.updateWithDish(setMealDto);
 
+        cacheWriteBuffer.invalidate("setmeal", "setmeal:" + setMealDto.getId(), "setmeal:category:" + setMealDto.getCategoryId(),
+                "setmeal:category:" + (oldSetMeal == null ? setMealDto.getCategoryId() : oldSetMeal.getCategoryId()));
+
         // 存入缓存
-        String key = "setMealDto:id:" + setMealDto.getId();
-        redisTemplate.opsForValue().set(key,setMealDto,60,TimeUnit.MINUTES);
+        String key = CacheKeys.setmeal(setMealDto.getId());
+        cacheWriteBuffer.set(key, setMealDto, 60, TimeUnit.MINUTES, "setmeal:" + setMealDto.getId());
+        cacheWriteBuffer.invalidateMenu();
 
         return ret?R.success("修改成功") : R.error("修改失败");
     }
@@ -152,13 +204,19 @@ public class SetmealController {
      */
     @DeleteMapping
     public R<String> delete(@RequestParam List<Long> ids){
+        // 删除前查出套餐所属分类，用于删除分类下的套餐列表缓存
+        List<SetMeal> setMeals = setMealService.listByIds(ids);
         boolean ret = setMealService.removeBatchByIds(ids);
 
-        //删除缓存
-        for (Long id : ids) {
-            String key = "setMealDto:id:" + id;
-            redisTemplate.delete(key);
+        //删除依赖这些套餐的缓存
+        List<String> tags = new ArrayList<>();
+        tags.add("setmeal");
+        for (SetMeal setMeal : setMeals) {
+            tags.add("setmeal:" + setMeal.getId());
+            tags.add("setmeal:category:" + setMeal.getCategoryId());
         }
+        cacheWriteBuffer.invalidate(tags);
+        cacheWriteBuffer.invalidateMenu();
         return ret?R.success("删除成功") : R.error("删除失败");
     }
 
@@ -173,43 +231,54 @@ public class SetmealController {
         Long id = (Long) request.getSession().getAttribute("employee");
         BaseContext.setCurrentId(id);
 
+        // 只查询套餐所属分类，用于删除分类下的套餐列表缓存
         LambdaQueryWrapper<SetMeal> queryWrapper = new LambdaQueryWrapper<>();
-
-        queryWrapper.in(ids != null,SetMeal::getId,ids);
-
+        queryWrapper.select(SetMeal::getId,SetMeal::getCategoryId);
+        queryWrapper.in(SetMeal::getId,ids);
         List<SetMeal> list = setMealService.list(queryWrapper);
 
+        // 一条UPDATE批量修改状态
+        setMealService.updateStatusByIds(status,ids);
+
+        List<String> tags = new ArrayList<>();
+        tags.add("setmeal");
         for (SetMeal setMeal : list) {
-            if (setMeal != null){
-                setMeal.setStatus(status);
-                setMealService.updateById(setMeal);
-            }
+            tags.add("setmeal:" + setMeal.getId());
+            tags.add("setmeal:category:" + setMeal.getCategoryId());
         }
+        cacheWriteBuffer.invalidate(tags);
+        cacheWriteBuffer.invalidateMenu();
         return R.success(status == 1? "启售成功" : "停售成功");
     }
 
     /**
      * @Description: 根据分类id查询其下的菜品
      * @param categoryId 分类id
+     * @param webRequest 当前请求，用于比较ETag
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @GetMapping("/list")
-    public R<List<SetMeal>> getListByCategoryIdWithDish(String categoryId,Integer status){
-        List<SetMeal> listByCategoryIdWithSetMeal = null;
+    public CachedJson getListByCategoryIdWithDish(String categoryId,Integer status,WebRequest webRequest){
+        // 内容版本未变化，客户端缓存仍然有效，不查询缓存和数据库
+        if (webRequest.checkNotModified(contentVersions.etag(ContentVersions.MENU))){
+            return null;
+        }
 
-        // 查询缓存
-        ValueOperations opsForValue = redisTemplate.opsForValue();
+        CachedJson listByCategoryIdWithSetMeal = null;
+        String key = CacheKeys.json(CacheKeys.setmealList(categoryId, status));
 
-        String key = "setMeal:category_" + categoryId + ":status_" + status;
-        listByCategoryIdWithSetMeal = (List<SetMeal>) opsForValue.get(key);
-        // 缓存击中
+        // 查询本地缓存
+        listByCategoryIdWithSetMeal = (CachedJson) menuNearCache.get(key);
         if (listByCategoryIdWithSetMeal != null){
-            return R.success(listByCategoryIdWithSetMeal);
+            return listByCategoryIdWithSetMeal;
         }
-
-        listByCategoryIdWithSetMeal = setMealService.getListByCategoryIdWithSetMeal(categoryId, status);
-        // 存入缓存
-        opsForValue.set(key,listByCategoryIdWithSetMeal,60,TimeUnit.MINUTES);
-        return R.success(listByCategoryIdWithSetMeal);
+        long generation = menuNearCache.generation();
+
+        // 查询序列化好的响应缓存，未命中时查询数据库并存入缓存
+        listByCategoryIdWithSetMeal = jsonResponseCache.get(key,
+                () -> setMealService.getListByCategoryIdWithSetMeal(categoryId, status), 60, TimeUnit.MINUTES,
+                "setmeal:category:" + categoryId);
+        menuNearCache.put(key, listByCategoryIdWithSetMeal, generation);
+        return listByCategoryIdWithSetMeal;
     }
 }
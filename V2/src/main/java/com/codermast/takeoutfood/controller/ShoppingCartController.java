@@ -1,6 +1,6 @@
 package com.codermast.takeoutfood.controller;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.codermast.takeoutfood.common.AmountUtils;
 import com.codermast.takeoutfood.common.BaseContext;
 import com.codermast.takeoutfood.common.R;
 import com.codermast.takeoutfood.entity.ShoppingCart;
@@ -27,13 +27,13 @@ public class ShoppingCartController {
     ShoppingCartService shoppingCartService;
 
     /**
-     * @Description: 获取购物车列表
+     * @Description: 获取购物车列表，附带按分精确计算的总金额
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @GetMapping("/list")
     public R<List<ShoppingCart>> list() {
-        List<ShoppingCart> list = shoppingCartService.list();
-        return R.success(list);
+        List<ShoppingCart> list = shoppingCartService.listByUserId(BaseContext.getCurrentId());
+        return R.success(list).add("total", AmountUtils.toYuan(AmountUtils.cartTotalFen(list)));
     }
 
     /**
@@ -44,23 +44,7 @@ public class ShoppingCartController {
     @PostMapping("/add")
     public R<ShoppingCart> add(@RequestBody ShoppingCart shoppingCart) {
         shoppingCart.setUserId(BaseContext.getCurrentId());
-        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(ShoppingCart::getUserId, shoppingCart.getUserId());
-        queryWrapper.eq(shoppingCart.getSetmealId() != null,ShoppingCart::getSetmealId, shoppingCart.getSetmealId());
-        queryWrapper.eq(shoppingCart.getDishId() != null, ShoppingCart::getDishId, shoppingCart.getDishId());
-        queryWrapper.eq(shoppingCart.getDishFlavor() != null, ShoppingCart::getDishFlavor, shoppingCart.getDishFlavor());
-
-        // 在购物车中查询是否存在该菜品
-        ShoppingCart shoppingCartServiceOne = shoppingCartService.getOne(queryWrapper);
-
-        // 购物车存在该菜品，则仅增加该菜品的数量即可
-        if (shoppingCartServiceOne != null) {
-            shoppingCartServiceOne.setNumber(shoppingCartServiceOne.getNumber() + 1);
-            shoppingCartService.updateById(shoppingCartServiceOne);
-        } else {
-            shoppingCartService.save(shoppingCart);
-        }
-        return R.success(shoppingCart);
+        return R.success(shoppingCartService.add(shoppingCart));
     }
 
     /**
@@ -69,41 +53,17 @@ public class ShoppingCartController {
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
     @PostMapping("/sub")
-    public R<String> sub(@RequestBody Map<String, String> map) {
-        if (map.get("setmealId") != null) {
-            LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(ShoppingCart::getUserId, BaseContext.getCurrentId());
-            queryWrapper.eq(ShoppingCart::getSetmealId, map.get("setmealId"));
-
-            ShoppingCart one = shoppingCartService.getOne(queryWrapper);
-            if (one != null) {
-                if (one.getNumber() > 1) {
-                    one.setNumber(one.getNumber() - 1);
-                    shoppingCartService.updateById(one);
-                } else {
-                    shoppingCartService.remove(queryWrapper);
-                }
-            }
+    public R<ShoppingCart> sub(@RequestBody Map<String, String> map) {
+        String dishId = map.get("dishId");
+        String setmealId = map.get("setmealId");
+        if (dishId == null && setmealId == null) {
+            return R.error("参数错误");
         }
 
-        if ((map.get("dishId") != null)) {
-            LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(ShoppingCart::getUserId, BaseContext.getCurrentId());
-            queryWrapper.eq(ShoppingCart::getDishId, map.get("dishId"));
-
-            ShoppingCart one = shoppingCartService.getOne(queryWrapper);
-            if (one != null) {
-                if (one.getNumber() > 1) {
-                    one.setNumber(one.getNumber() - 1);
-                    shoppingCartService.updateById(one);
-                } else {
-                    shoppingCartService.remove(queryWrapper);
-                }
-            }
-        }
-
-
-        return R.success("删除成功");
+        ShoppingCart shoppingCart = shoppingCartService.sub(BaseContext.getCurrentId(),
+                dishId == null ? null : Long.valueOf(dishId),
+                setmealId == null ? null : Long.valueOf(setmealId));
+        return R.success(shoppingCart);
     }
 
     /**
@@ -112,10 +72,7 @@ public class ShoppingCartController {
      */
     @DeleteMapping("/clean")
     public R<String> sub() {
-        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
-
-        queryWrapper.eq(ShoppingCart::getUserId, BaseContext.getCurrentId());
-        shoppingCartService.remove(queryWrapper);
+        shoppingCartService.clean(BaseContext.getCurrentId());
         return R.success("清空成功");
     }
 }
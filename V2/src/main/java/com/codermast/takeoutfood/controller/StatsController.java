@@ -0,0 +1,58 @@
+package com.codermast.takeoutfood.controller;
+
+import com.codermast.takeoutfood.common.CacheWriteBuffer;
+import com.codermast.takeoutfood.common.CompactRedisSerializer;
+import com.codermast.takeoutfood.common.ImageByteCache;
+import com.codermast.takeoutfood.common.MenuNearCache;
+import com.codermast.takeoutfood.common.R;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Description: 运行统计控制器，供后台查看各级缓存的命中和开销情况
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+    @Autowired
+    private ImageByteCache imageByteCache;
+
+    @Autowired
+    private CacheWriteBuffer cacheWriteBuffer;
+
+    @Autowired
+    private MenuNearCache menuNearCache;
+
+    @Autowired
+    private CompactRedisSerializer compactRedisSerializer;
+
+    /**
+     * @param request 当前请求，用于判断是否为员工登录
+     * @Description: 获取缓存统计信息，仅员工可以查看
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @GetMapping("/cache")
+    public R<Map<String, Object>> cache(HttpServletRequest request) {
+        if (request.getSession().getAttribute("employee") == null) {
+            return R.error("无权查看统计信息");
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("menuNearCache", menuNearCache.getStats());
+        stats.put("imageCache", imageByteCache.getStats());
+        stats.put("cacheWrite", cacheWriteBuffer.getStats());
+        stats.put("redisSerializer", compactRedisSerializer.getStats());
+        return R.success(stats);
+    }
+}
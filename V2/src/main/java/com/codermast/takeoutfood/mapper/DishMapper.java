@@ -1,9 +1,30 @@
 package com.codermast.takeoutfood.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.codermast.takeoutfood.dto.DishDto;
 import com.codermast.takeoutfood.entity.Dish;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface DishMapper extends BaseMapper<Dish> {
+
+    /**
+     * @param categoryId 分类id，为空时查询全部分类
+     * @param status 菜品状态
+     * @Description: 联表查询菜品及其分类名称，一条SQL代替逐条查询分类
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Select("<script>" +
+            "select d.id, d.name, d.category_id, d.price, d.code, d.image, d.description, d.status, d.sort, " +
+            "d.create_time, d.update_time, d.create_user, d.update_user, c.name as category_name " +
+            "from dish d left join category c on d.category_id = c.id " +
+            "where d.status = #{status} " +
+            "<if test='categoryId != null'>and d.category_id = #{categoryId} </if>" +
+            "order by d.sort asc, d.update_time desc" +
+            "</script>")
+    List<DishDto> listWithCategoryName(@Param("categoryId") Long categoryId, @Param("status") Integer status);
 }
@@ -3,6 +3,9 @@ package com.codermast.takeoutfood.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.codermast.takeoutfood.entity.Category;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * @Description: 分类服务接口
  * @author: CoderMast
@@ -11,4 +14,6 @@ import com.codermast.takeoutfood.entity.Category;
  */
 public interface CategoryService extends IService<Category> {
     void remove(Long id);
+
+    Map<Long, String> getNameMapByIds(Collection<Long> ids);
 }
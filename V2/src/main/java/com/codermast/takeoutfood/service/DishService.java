@@ -4,8 +4,13 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.codermast.takeoutfood.dto.DishDto;
 import com.codermast.takeoutfood.entity.Dish;
 
+import java.util.List;
+
 public interface DishService extends IService<Dish> {
     DishDto getByIdWithFlavor(String id);
     void saveWithFlavor(DishDto dishDto);
+    boolean updateWithFlavor(DishDto dishDto);
+    List<DishDto> listWithFlavor(Long categoryId);
+    void updateStatusByIds(Integer status, List<Long> ids);
 
 }
@@ -0,0 +1,23 @@
+package com.codermast.takeoutfood.service;
+
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+
+/**
+ * @Description: 图片服务接口
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+public interface ImageService {
+    Resource getImage(String name);
+
+    Resource getImage(String name, String size);
+
+    void generateVariants(String name);
+
+    String save(InputStream inputStream, String originalFilename);
+
+    boolean isImmutable(String name, String size, Resource image);
+}
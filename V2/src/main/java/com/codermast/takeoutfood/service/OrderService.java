@@ -4,5 +4,12 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.codermast.takeoutfood.entity.Order;
 
 public interface OrderService extends IService<Order> {
-    void submit(Order order);
+    // 订单提交状态：处理中、已写入、写入失败
+    String SUBMIT_PENDING = "PENDING";
+    String SUBMIT_SUCCESS = "SUCCESS";
+    String SUBMIT_FAILED = "FAILED";
+
+    Long submit(Order order);
+
+    String getSubmitStatus(Long orderId);
 }
@@ -15,4 +15,6 @@ public interface SetMealService extends IService<SetMeal> {
     boolean saveByIdWithSetMealDto(SetMealDto setMealDto);
 
     List<SetMeal> getListByCategoryIdWithSetMeal(String categoryId, Integer status);
+
+    void updateStatusByIds(Integer status, List<Long> ids);
 }
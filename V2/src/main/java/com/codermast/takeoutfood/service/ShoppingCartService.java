@@ -3,5 +3,18 @@ package com.codermast.takeoutfood.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.codermast.takeoutfood.entity.ShoppingCart;
 
+import java.util.List;
+
 public interface ShoppingCartService extends IService<ShoppingCart> {
+    ShoppingCart add(ShoppingCart shoppingCart);
+
+    ShoppingCart sub(Long userId, Long dishId, Long setmealId);
+
+    List<ShoppingCart> listByUserId(Long userId);
+
+    void clean(Long userId);
+
+    void restore(Long userId, List<ShoppingCart> shoppingCarts);
+
+    void flushDirtyCarts();
 }
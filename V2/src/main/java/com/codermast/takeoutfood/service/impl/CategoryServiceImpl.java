@@ -13,6 +13,9 @@ import com.codermast.takeoutfood.service.SetMealService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.*;
+import java.util.stream.Collectors;
+
 /**
  * @Description: 分类服务的实现类
  * @author: CoderMast
@@ -60,4 +63,28 @@ public class CategoryServiceImpl extends ServiceImpl<CategoryMapper, Category> i
         // 即没有关联的菜品，也没有关联的套餐。则可以删除。
         super.removeById(categoryId);
     }
+
+    /**
+     * @param ids 分类id集合，允许重复和null
+     * @Description: 批量查询分类名称，一次listByIds代替逐条getById，返回id到名称的映射
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public Map<Long, String> getNameMapByIds(Collection<Long> ids) {
+        // 去重并过滤掉空值
+        Set<Long> distinctIds = ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+
+        if (distinctIds.isEmpty()){
+            return Collections.emptyMap();
+        }
+
+        // 一次查询出所有分类
+        List<Category> categories = this.listByIds(distinctIds);
+
+        Map<Long, String> nameMap = new HashMap<>(categories.size());
+        for (Category category : categories) {
+            nameMap.put(category.getId(), category.getName());
+        }
+        return nameMap;
+    }
 }
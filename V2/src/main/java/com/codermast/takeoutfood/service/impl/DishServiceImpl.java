@@ -2,6 +2,8 @@ package com.codermast.takeoutfood.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.codermast.takeoutfood.common.BaseContext;
+import com.codermast.takeoutfood.common.DishUpdatedEvent;
 import com.codermast.takeoutfood.dto.DishDto;
 import com.codermast.takeoutfood.entity.Dish;
 import com.codermast.takeoutfood.entity.DishFlavor;
@@ -11,10 +13,13 @@ import com.codermast.takeoutfood.service.DishFlavorService;
 import com.codermast.takeoutfood.service.DishService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * @Description: 菜品管理服务实现类
@@ -29,8 +34,11 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
 
     @Autowired
     CategoryService categoryService;
+
+    @Autowired
+    ApplicationEventPublisher applicationEventPublisher;
     /**
-     * @Description: 根据id查菜品信息和对应的口味信息
+     * @Description: 根据id查菜品信息和对应的口味信息，菜品不存在时返回null
      * @param id 菜品id
      * @Author: <a href="https://www.codermast.com/">CoderMast</a>
      */
@@ -41,6 +49,9 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
 
         // 查询的菜品
         Dish dish = this.getById(id);
+        if (dish == null){
+            return null;
+        }
 
         // 查询菜品对应的口味列表
         LambdaQueryWrapper<DishFlavor> queryWrapper = new LambdaQueryWrapper<>();
@@ -75,4 +86,118 @@ public class DishServiceImpl extends ServiceImpl<DishMapper, Dish> implements Di
         // 批量保存菜品偏好
         dishFlavorService.saveBatch(flavors);
     }
+
+    /**
+     * @Description: 修改菜品和口味。一次查出菜品现有的口味，按口味名称在内存中比对出新增、修改和删除的部分，
+     * 再分别批量执行；事务提交后发布事件刷新缓存
+     * @param dishDto 封装实体
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    @Transactional
+    public boolean updateWithFlavor(DishDto dishDto){
+        // 修改前的菜品，用于刷新原分类的菜品列表缓存
+        Dish oldDish = this.getById(dishDto.getId());
+        if (oldDish == null || !this.updateById(dishDto)){
+            return false;
+        }
+
+        List<DishFlavor> flavors = dishDto.getFlavors();
+        if (flavors == null){
+            flavors = new ArrayList<>();
+        }
+
+        // 菜品现有的口味，按口味名称索引；旧版本每次修改都会重复插入，同名口味多出的记录直接删除
+        LambdaQueryWrapper<DishFlavor> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(DishFlavor::getDishId,dishDto.getId());
+        Map<String, DishFlavor> currentMap = new HashMap<>();
+        List<Long> deleteIds = new ArrayList<>();
+        for (DishFlavor current : dishFlavorService.list(queryWrapper)) {
+            if (currentMap.putIfAbsent(current.getName(),current) != null){
+                deleteIds.add(current.getId());
+            }
+        }
+
+        List<DishFlavor> inserts = new ArrayList<>();
+        List<DishFlavor> updates = new ArrayList<>();
+        for (DishFlavor flavor : flavors) {
+            flavor.setDishId(dishDto.getId());
+            DishFlavor current = currentMap.remove(flavor.getName());
+            if (current == null){
+                flavor.setId(null);
+                inserts.add(flavor);
+            } else if (!Objects.equals(current.getValue(),flavor.getValue())){
+                flavor.setId(current.getId());
+                updates.add(flavor);
+            }
+        }
+        // 剩下未匹配的是被删除的口味
+        currentMap.values().forEach(current -> deleteIds.add(current.getId()));
+
+        if (!inserts.isEmpty()){
+            dishFlavorService.saveBatch(inserts);
+        }
+        if (!updates.isEmpty()){
+            dishFlavorService.updateBatchById(updates);
+        }
+        if (!deleteIds.isEmpty()){
+            dishFlavorService.removeBatchByIds(deleteIds);
+        }
+
+        applicationEventPublisher.publishEvent(
+                new DishUpdatedEvent(dishDto.getId(), oldDish.getCategoryId(), dishDto.getCategoryId()));
+        return true;
+    }
+
+    /**
+     * @Description: 查询分类下起售的菜品及其口味，菜品(含分类名称)和口味各一条SQL，在内存中按菜品id分组组装
+     * @param categoryId 分类id
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public List<DishDto> listWithFlavor(Long categoryId) {
+        // 查询起售状态的菜品，同时联表带出分类名称
+        List<DishDto> dishDtoList = this.baseMapper.listWithCategoryName(categoryId, 1);
+
+        if (dishDtoList.isEmpty()){
+            return dishDtoList;
+        }
+
+        // 一次查询出所有菜品的口味
+        List<Long> dishIds = dishDtoList.stream().map(DishDto::getId).collect(Collectors.toList());
+        LambdaQueryWrapper<DishFlavor> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.in(DishFlavor::getDishId,dishIds);
+        //SQL:select * from dish_flavor where dish_id in (?,?,...)
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorService.list(queryWrapper).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
+
+        // 将口味按菜品id分配给对应的菜品
+        for (DishDto dishDto : dishDtoList) {
+            List<DishFlavor> flavors = flavorMap.get(dishDto.getId());
+            if (flavors != null){
+                dishDto.setFlavors(flavors);
+            }
+        }
+        return dishDtoList;
+    }
+
+    /**
+     * @Description: 批量修改菜品状态，一条UPDATE完成；不经过实体所以不会自动填充，更新时间和更新人在此显式设置
+     * @param status 状态码，0为停售，1为启售
+     * @param ids 菜品id列表
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public void updateStatusByIds(Integer status, List<Long> ids) {
+        if (ids == null || ids.isEmpty()){
+            return;
+        }
+        //SQL:update dish set status = ?, update_time = ?, update_user = ? where id in (?,?,...)
+        this.lambdaUpdate()
+                .set(Dish::getStatus,status)
+                .set(Dish::getUpdateTime, LocalDateTime.now())
+                .set(Dish::getUpdateUser, BaseContext.getCurrentId())
+                .in(Dish::getId,ids)
+                .update();
+    }
 }
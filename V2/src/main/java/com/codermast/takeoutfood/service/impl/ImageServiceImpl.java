@@ -0,0 +1,460 @@
+package com.codermast.takeoutfood.service.impl;
+
+import com.codermast.takeoutfood.common.CustomException;
+import com.codermast.takeoutfood.service.ImageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: 图片服务的实现类，图片优先从磁盘的图片目录读取，磁盘上不存在时再读取打包在resources中的示例图片。
+ * 上传的图片按内容寻址存储：文件名为内容的sha256加扩展名，保存在以哈希前两个字节分层的目录中（如 ab/cd/abcd...ef.jpg），
+ * 重复上传同一张图片只保存一份，文件名不变则内容不变，可以长期缓存；早期以UUID命名的图片仍保存在图片目录下。
+ * 上传的图片在后台线程池中生成缩略图、列表图和详情图三种尺寸，尺寸图与原图保存在同一目录，文件名为 原文件名_尺寸.扩展名
+ * @author: CoderMast
+ * @date: 2026/10/17
+ * @Blog: <a href="https://www.codermast.com/">codermast</a>
+ */
+@Slf4j
+@Service
+public class ImageServiceImpl implements ImageService {
+    // 各尺寸图片的最长边，单位像素
+    private static final Map<String, Integer> VARIANTS = new LinkedHashMap<>();
+
+    static {
+        VARIANTS.put("thumb", 120);
+        VARIANTS.put("list", 360);
+        VARIANTS.put("detail", 800);
+    }
+
+    // 内容寻址的文件名：64位十六进制的sha256，后面可以跟尺寸和扩展名
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("^[0-9a-f]{64}([._].*)?$");
+
+    // 允许上传的扩展名及其文件头，上传时校验文件头与扩展名一致；webp的文件头为RIFF，第8个字节开始为WEBP
+    private static final Map<String, byte[]> SIGNATURES = new HashMap<>();
+
+    static {
+        SIGNATURES.put("jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+        SIGNATURES.put("jpeg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+        SIGNATURES.put("png", new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        SIGNATURES.put("gif", new byte[]{'G', 'I', 'F', '8'});
+        SIGNATURES.put("bmp", new byte[]{'B', 'M'});
+        SIGNATURES.put("webp", new byte[]{'R', 'I', 'F', 'F'});
+    }
+
+    // 校验文件头时读取的字节数
+    private static final int HEADER_LENGTH = 12;
+
+    // JPEG图片的压缩质量
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private static final AtomicInteger WORKER_INDEX = new AtomicInteger();
+
+    @Value("${takeout-food.images}")
+    private String imagesUrl;
+
+    // 上传图片的最大字节数
+    @Value("${takeout-food.image-max-bytes:5242880}")
+    private long maxImageBytes;
+
+    // 生成尺寸图的线程数
+    @Value("${takeout-food.image-variant.workers:2}")
+    private int workerCount;
+
+    // 等待生成的队列容量，队列满时放弃生成，下载时仍返回原图
+    @Value("${takeout-food.image-variant.queue-capacity:200}")
+    private int queueCapacity;
+
+    // 允许解码的最大像素数，超过时不解码，尺寸图直接使用原图；文件很小而像素极多的图片解码后会占满堆内存
+    @Value("${takeout-food.image-variant.max-pixels:25000000}")
+    private long maxPixels;
+
+    private ThreadPoolExecutor workers;
+
+    // 已提交但还未生成完成的尺寸图，避免同一张图片被重复提交
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @Description: 启动生成尺寸图的线程池
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @PostConstruct
+    public void startWorkers() {
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "image-variant-" + WORKER_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @Description: 停止线程池，未开始的任务直接丢弃，下次访问时会重新提交
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @PreDestroy
+    public void stopWorkers() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * @param name 图片文件名
+     * @Description: 获取图片资源，文件名不合法或图片不存在时返回null
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public Resource getImage(String name) {
+        // 文件名中不能包含路径，防止读取图片目录之外的文件
+        if (!StringUtils.hasText(name) || name.contains("/") || name.contains("\\") || name.contains("..")) {
+            return null;
+        }
+
+        // 上传的图片保存在磁盘上
+        Path path = diskPath(name);
+        if (Files.isRegularFile(path) && Files.isReadable(path)) {
+            return new FileSystemResource(path);
+        }
+
+        // 项目自带的示例图片
+        ClassPathResource classPathResource = new ClassPathResource(imagesUrl + name);
+        return classPathResource.exists() ? classPathResource : null;
+    }
+
+    /**
+     * @param name 图片文件名
+     * @param size 尺寸，thumb、list或detail，为空或不支持时返回原图
+     * @Description: 获取指定尺寸的图片，尺寸图还未生成时提交生成并先返回原图
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public Resource getImage(String name, String size) {
+        Resource image = getImage(name);
+        if (image == null || !VARIANTS.containsKey(size)) {
+            return image;
+        }
+
+        Path variant = diskPath(variantName(name, size));
+        if (Files.isRegularFile(variant)) {
+            return new FileSystemResource(variant);
+        }
+        submit(name, size);
+        return image;
+    }
+
+    /**
+     * @param inputStream 上传的文件内容
+     * @param originalFilename 上传时的文件名，用于确定扩展名
+     * @Description: 保存上传的图片，直接从上传的数据流读取，边写入临时文件边计算sha256并校验文件头和大小，
+     * 再重命名到哈希对应的目录；图片已存在时直接丢弃临时文件。内存中只有一个固定大小的缓冲区
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public String save(InputStream inputStream, String originalFilename) {
+        String extension = StringUtils.getFilenameExtension(originalFilename);
+        extension = extension == null ? null : extension.toLowerCase(Locale.ROOT);
+        if (extension == null || !SIGNATURES.containsKey(extension)) {
+            throw new CustomException("图片格式不正确");
+        }
+
+        Path temp = null;
+        try {
+            Path dir = Paths.get(imagesUrl);
+            Files.createDirectories(dir);
+            // 临时文件与最终文件在同一文件系统中，移动时不需要再复制
+            temp = dir.resolve(UUID.randomUUID() + ".upload.tmp");
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (OutputStream outputStream = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW)) {
+                byte[] buffer = new byte[8192];
+
+                // 先读出文件头校验格式，格式不对时不再读取剩余内容
+                int length = readHeader(inputStream, buffer);
+                if (!matchesSignature(extension, buffer, length)) {
+                    throw new CustomException("图片格式不正确");
+                }
+
+                long total = 0;
+                while (length > 0) {
+                    total += length;
+                    if (total > maxImageBytes) {
+                        throw new CustomException("图片大小不能超过" + maxImageBytes / 1024 + "KB");
+                    }
+                    digest.update(buffer, 0, length);
+                    outputStream.write(buffer, 0, length);
+                    length = inputStream.read(buffer);
+                }
+            }
+
+            String name = String.format("%064x", new BigInteger(1, digest.digest())) + "." + extension;
+            Path target = diskPath(name);
+            if (Files.exists(target)) {
+                log.info("图片{}已存在，不再重复保存", name);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return name;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.error("图片保存失败：{}", e.getMessage());
+            throw new CustomException("图片保存失败");
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * @param name 图片文件名
+     * @param size 请求的尺寸
+     * @param image 实际返回的图片
+     * @Description: 判断返回的图片能否长期缓存：只有内容寻址的图片，并且返回的就是请求的尺寸时，同一地址的内容才永远不变
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public boolean isImmutable(String name, String size, Resource image) {
+        if (!CONTENT_ADDRESSED.matcher(name).matches()) {
+            return false;
+        }
+        String expected = VARIANTS.containsKey(size) ? variantName(name, size) : name;
+        return expected.equals(image.getFilename());
+    }
+
+    /**
+     * @param name 刚上传的图片文件名
+     * @Description: 在后台生成全部尺寸的图片
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public void generateVariants(String name) {
+        for (String size : VARIANTS.keySet()) {
+            submit(name, size);
+        }
+    }
+
+    private void submit(String name, String size) {
+        String task = variantName(name, size);
+        if (!pending.add(task)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    generate(name, size);
+                } catch (Exception e) {
+                    log.warn("图片{}生成{}尺寸失败：{}", name, size, e.getMessage());
+                } finally {
+                    pending.remove(task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(task);
+            log.warn("图片尺寸生成队列已满，放弃生成{}", task);
+        }
+    }
+
+    // 按最长边等比缩小，原图不大于目标尺寸、格式不支持或缩小后反而更大时直接使用原图，保证下次访问能命中
+    private void generate(String name, String size) throws IOException {
+        Resource image = getImage(name);
+        if (image == null) {
+            return;
+        }
+        Path target = diskPath(variantName(name, size));
+        Files.createDirectories(target.getParent());
+        // 先写入临时文件再移动，下载时不会读到写了一半的文件
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+        try {
+            String format = format(name);
+            BufferedImage source = null;
+            if (format != null) {
+                try {
+                    source = decode(image, name);
+                } catch (IOException e) {
+                    // ImageIO无法解码的图片（如CMYK色彩的JPEG）按不支持的格式处理
+                    log.warn("图片{}解码失败：{}", name, e.getMessage());
+                }
+            }
+
+            int maxEdge = VARIANTS.get(size);
+            if (source != null && Math.max(source.getWidth(), source.getHeight()) > maxEdge) {
+                write(resize(source, maxEdge, "png".equals(format)), format, temp);
+            }
+            if (!Files.exists(temp) || Files.size(temp) >= image.contentLength()) {
+                try (InputStream inputStream = image.getInputStream()) {
+                    Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // 先只读取图片头中的宽高，像素数不超过限制时再解码，无法识别的格式返回null
+    private BufferedImage decode(Resource image, String name) throws IOException {
+        try (InputStream inputStream = image.getInputStream();
+             ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = imageInputStream == null ? null : ImageIO.getImageReaders(imageInputStream);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    log.warn("图片{}的像素数{}超过限制{}，不生成尺寸图", name, pixels, maxPixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // 每次最多缩小一半，逐步缩小到目标尺寸，比一次双线性插值缩小的画质更好
+    private static BufferedImage resize(BufferedImage source, int maxEdge, boolean alpha) {
+        double scale = (double) maxEdge / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!alpha) {
+                    // JPEG没有透明通道，透明部分填充为白色
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, width, height);
+                }
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static void write(BufferedImage image, String format, Path path) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(path.toFile())) {
+            writer.setOutput(outputStream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // 只缩放jpg和png，其他格式（如gif动图）直接复制原图
+    private static String format(String name) {
+        String extension = StringUtils.getFilenameExtension(name);
+        if (extension == null) {
+            return null;
+        }
+        extension = extension.toLowerCase(Locale.ROOT);
+        if ("jpg".equals(extension) || "jpeg".equals(extension)) {
+            return "jpeg";
+        }
+        return "png".equals(extension) ? "png" : null;
+    }
+
+    // 读取文件头，数据流中可用的字节不足时继续读取，直到读满或读完
+    private static int readHeader(InputStream inputStream, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < HEADER_LENGTH) {
+            int read = inputStream.read(buffer, length, HEADER_LENGTH - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static boolean matchesSignature(String extension, byte[] header, int length) {
+        byte[] signature = SIGNATURES.get(extension);
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return !"webp".equals(extension)
+                || length >= HEADER_LENGTH && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P';
+    }
+
+    // 内容寻址的图片按哈希的前两个字节分两层目录，单个目录中的文件数不会过多
+    private Path diskPath(String name) {
+        if (CONTENT_ADDRESSED.matcher(name).matches()) {
+            return Paths.get(imagesUrl, name.substring(0, 2), name.substring(2, 4), name);
+        }
+        return Paths.get(imagesUrl, name);
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("临时文件{}删除失败：{}", path, e.getMessage());
+        }
+    }
+
+    private static String variantName(String name, String size) {
+        String extension = StringUtils.getFilenameExtension(name);
+        String base = StringUtils.stripFilenameExtension(name);
+        return extension == null ? base + "_" + size : base + "_" + size + "." + extension;
+    }
+}
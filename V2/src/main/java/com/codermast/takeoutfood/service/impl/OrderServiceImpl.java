@@ -1,28 +1,39 @@
 package com.codermast.takeoutfood.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.codermast.takeoutfood.common.AmountUtils;
 import com.codermast.takeoutfood.common.BaseContext;
 import com.codermast.takeoutfood.common.CustomException;
 import com.codermast.takeoutfood.entity.*;
 import com.codermast.takeoutfood.mapper.OrderMapper;
 import com.codermast.takeoutfood.service.*;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
- * @Description: 订单业务实现类
+ * @Description: 订单业务实现类，下单请求只做校验并预留订单号，订单由后台线程批量写入数据库；
+ * 待写入队列只在内存中，进程崩溃时已受理未写入的订单会丢失，其提交状态过期后查询结果为订单不存在，
+ * 正常停机时会等待队列写完，超时未写入的订单标记为失败并恢复购物车
  * @author: CoderMast
  * @date: 2022/11/27
  * @Blog: <a href="https://www.codermast.com/">codermast</a>
  */
+@Slf4j
 @Service
 public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements OrderService {
     @Autowired
@@ -37,15 +48,53 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     @Autowired
     private OrderDetailService orderDetailService;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 订单提交状态的key前缀，后接 用户id:订单号
+    private static final String STATUS_KEY_PREFIX = "order:status:";
+
+    // 订单提交状态的有效期，单位分钟，过期后根据订单表判断
+    private static final long STATUS_TTL_MINUTES = 60;
+
+    // 写入线程等待新订单的间隔，单位毫秒
+    private static final long POLL_MILLIS = 200;
+
+    private static final AtomicInteger WORKER_INDEX = new AtomicInteger();
+
+    // 待写入订单队列的容量，队列满时拒绝下单
+    @Value("${takeout-food.order.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 订单写入线程数
+    @Value("${takeout-food.order.workers:2}")
+    private int workerCount;
+
+    // 每个事务最多合并写入的订单数
+    @Value("${takeout-food.order.batch-size:100}")
+    private int batchSize;
+
+    private BlockingQueue<OrderTask> submitQueue;
+
+    private ExecutorService workers;
+
+    private volatile boolean running = true;
+
     @Override
-    public void submit(Order orders) {
+    public Long submit(Order orders) {
+        //服务停止中，不再受理新订单
+        if (!running) {
+            throw new CustomException("系统繁忙，请稍后再试");
+        }
+
         //获得当前用户id
         Long userId = BaseContext.getCurrentId();
 
         //查询当前用户的购物车数据
-        LambdaQueryWrapper<ShoppingCart> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(ShoppingCart::getUserId,userId);
-        List<ShoppingCart> shoppingCarts = shoppingCartService.list(wrapper);
+        List<ShoppingCart> shoppingCarts = shoppingCartService.listByUserId(userId);
 
         if(shoppingCarts == null || shoppingCarts.size() == 0){
             throw new CustomException("购物车为空，不能下单");
@@ -63,8 +112,6 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
         long orderId = IdWorker.getId();//订单号
 
-        AtomicInteger amount = new AtomicInteger(0);
-
         List<OrderDetail> orderDetails = shoppingCarts.stream().map((item) -> {
             OrderDetail orderDetail = new OrderDetail();
             orderDetail.setOrderId(orderId);
@@ -75,7 +122,6 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             orderDetail.setName(item.getName());
             orderDetail.setImage(item.getImage());
             orderDetail.setAmount(item.getAmount());
-            amount.addAndGet(item.getAmount().multiply(new BigDecimal(item.getNumber())).intValue());
             return orderDetail;
         }).collect(Collectors.toList());
 
@@ -84,7 +130,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         orders.setOrderTime(LocalDateTime.now());
         orders.setCheckoutTime(LocalDateTime.now());
         orders.setStatus(2);
-        orders.setAmount(new BigDecimal(amount.get()));//总金额
+        orders.setAmount(AmountUtils.toYuan(AmountUtils.cartTotalFen(shoppingCarts)));//总金额，按分精确计算
         orders.setUserId(userId);
         orders.setNumber(String.valueOf(orderId));
         orders.setUserName(user.getName());
@@ -94,13 +140,158 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 + (addressBook.getCityName() == null ? "" : addressBook.getCityName())
                 + (addressBook.getDistrictName() == null ? "" : addressBook.getDistrictName())
                 + (addressBook.getDetail() == null ? "" : addressBook.getDetail()));
-        //向订单表插入数据，一条数据
-        this.save(orders);
 
-        //向订单明细表插入数据，多条数据
+        //先记录处理中状态再入队，避免写入线程的结果被覆盖
+        setSubmitStatus(userId, orderId, SUBMIT_PENDING);
+        //先清空购物车再入队，写入失败时由写入线程恢复，避免恢复的商品又被清空
+        shoppingCartService.clean(userId);
+        if (!submitQueue.offer(new OrderTask(orders, orderDetails, shoppingCarts))) {
+            shoppingCartService.restore(userId, shoppingCarts);
+            stringRedisTemplate.delete(statusKey(userId, orderId));
+            throw new CustomException("系统繁忙，请稍后再试");
+        }
+        return orderId;
+    }
+
+    /**
+     * @param orderId 订单id
+     * @Description: 查询当前用户订单的提交状态，状态已过期时根据订单表判断，不属于当前用户的订单视为不存在
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public String getSubmitStatus(Long orderId) {
+        Long userId = BaseContext.getCurrentId();
+        String status = stringRedisTemplate.opsForValue().get(statusKey(userId, orderId));
+        if (status != null) {
+            return status;
+        }
+        Order order = this.getById(orderId);
+        return order != null && userId.equals(order.getUserId()) ? SUBMIT_SUCCESS : null;
+    }
+
+    /**
+     * @Description: 启动订单写入线程
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @PostConstruct
+    public void startWorkers() {
+        submitQueue = new ArrayBlockingQueue<>(queueCapacity);
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "order-submit-" + WORKER_INDEX.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::drainQueue);
+        }
+    }
+
+    /**
+     * @Description: 停止接收新订单，等待写入线程处理完队列中剩余的订单，超时未写入的订单标记为失败
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @PreDestroy
+    public void stopWorkers() throws InterruptedException {
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            List<OrderTask> remaining = new ArrayList<>();
+            submitQueue.drainTo(remaining);
+            log.warn("订单写入线程未能按时结束，剩余{}个订单未写入", remaining.size());
+            remaining.forEach(this::fail);
+        }
+    }
+
+    // 写入线程主循环，每次取出队列中的一批订单合并写入
+    private void drainQueue() {
+        List<OrderTask> batch = new ArrayList<>(batchSize);
+        while (running || !submitQueue.isEmpty()) {
+            try {
+                OrderTask first = submitQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                submitQueue.drainTo(batch, batchSize - 1);
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("订单写入线程异常：{}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // 整批订单在一个事务中多行插入，失败时逐个重试，避免一个订单拖累整批
+    private void persist(List<OrderTask> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> saveTasks(batch));
+            batch.forEach(task -> setSubmitStatus(task.order.getUserId(), task.order.getId(), SUBMIT_SUCCESS));
+            return;
+        } catch (Exception e) {
+            log.warn("订单批量写入失败，逐个重试：{}", e.getMessage());
+        }
+
+        for (OrderTask task : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> saveTasks(Collections.singletonList(task)));
+                setSubmitStatus(task.order.getUserId(), task.order.getId(), SUBMIT_SUCCESS);
+            } catch (Exception e) {
+                log.error("订单写入失败，订单号：{}，{}", task.order.getId(), e.getMessage());
+                fail(task);
+            }
+        }
+    }
+
+    // 订单写入失败，把下单时清空的商品放回购物车
+    private void fail(OrderTask task) {
+        Long userId = task.order.getUserId();
+        try {
+            shoppingCartService.restore(userId, task.shoppingCarts);
+        } catch (Exception e) {
+            log.error("购物车恢复失败，订单号：{}，{}", task.order.getId(), e.getMessage());
+        }
+        setSubmitStatus(userId, task.order.getId(), SUBMIT_FAILED);
+    }
+
+    private void saveTasks(List<OrderTask> tasks) {
+        List<Order> orders = new ArrayList<>(tasks.size());
+        List<OrderDetail> orderDetails = new ArrayList<>();
+        for (OrderTask task : tasks) {
+            orders.add(task.order);
+            orderDetails.addAll(task.orderDetails);
+        }
+        //向订单表插入数据
+        this.saveBatch(orders);
+        //向订单明细表插入数据
         orderDetailService.saveBatch(orderDetails);
+    }
+
+    private void setSubmitStatus(Long userId, Long orderId, String status) {
+        try {
+            stringRedisTemplate.opsForValue().set(statusKey(userId, orderId), status, STATUS_TTL_MINUTES, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("订单状态记录失败，订单号：{}，{}", orderId, e.getMessage());
+        }
+    }
+
+    private static String statusKey(Long userId, Long orderId) {
+        return STATUS_KEY_PREFIX + userId + ":" + orderId;
+    }
+
+    // 等待写入的订单及其明细，以及写入失败时要放回的购物车商品
+    private static class OrderTask {
+        private final Order order;
+        private final List<OrderDetail> orderDetails;
+        private final List<ShoppingCart> shoppingCarts;
 
-        //清空购物车数据
-        shoppingCartService.remove(wrapper);
+        private OrderTask(Order order, List<OrderDetail> orderDetails, List<ShoppingCart> shoppingCarts) {
+            this.order = order;
+            this.orderDetails = orderDetails;
+            this.shoppingCarts = shoppingCarts;
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.codermast.takeoutfood.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.codermast.takeoutfood.common.BaseContext;
 import com.codermast.takeoutfood.dto.SetMealDto;
 import com.codermast.takeoutfood.entity.Category;
 import com.codermast.takeoutfood.entity.SetMeal;
@@ -16,7 +17,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +39,10 @@ public class SetMealServiceImpl extends ServiceImpl<SetMealMapper, SetMeal> impl
     @Override
     public SetMealDto getByIdWithSetMealDto(String id) {
         SetMeal setMeal = this.getById(id);
+        // 套餐不存在
+        if (setMeal == null){
+            return null;
+        }
 
         SetMealDto setMealDto = new SetMealDto();
         BeanUtils.copyProperties(setMeal,setMealDto);
@@ -53,19 +59,74 @@ public class SetMealServiceImpl extends ServiceImpl<SetMealMapper, SetMeal> impl
         return setMealDto;
     }
 
+    /**
+     * @Description: 更新套餐及其菜品。一次查出套餐现有的菜品，按菜品id在内存中比对出新增、修改和删除的部分，
+     * 再分别批量执行，套餐菜品再多也只需固定次数的数据库交互
+     * @param setMealDto 套餐传输对象
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
     @Override
     @Transactional
     public boolean updateWithDish(SetMealDto setMealDto) {
         this.updateById(setMealDto);
         List<SetMealDish> setmealDishes = setMealDto.getSetmealDishes();
-        setmealDishes.forEach((item)->{
+        if (setmealDishes == null){
+            setmealDishes = new ArrayList<>();
+        }
+
+        // 套餐现有的菜品，按菜品id索引；旧版本每次修改都会重复插入，同一菜品多出的记录直接删除
+        LambdaQueryWrapper<SetMealDish> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(SetMealDish::getSetmealId,setMealDto.getId());
+        Map<Long, SetMealDish> currentMap = new HashMap<>();
+        List<Long> deleteIds = new ArrayList<>();
+        for (SetMealDish current : setMealDishService.list(queryWrapper)) {
+            if (currentMap.putIfAbsent(current.getDishId(),current) != null){
+                deleteIds.add(current.getId());
+            }
+        }
+
+        List<SetMealDish> inserts = new ArrayList<>();
+        List<SetMealDish> updates = new ArrayList<>();
+        for (SetMealDish item : setmealDishes) {
             item.setSetmealId(setMealDto.getId());
-        });
-        log.info(setmealDishes.toString());
-        setMealDishService.saveOrUpdateBatch(setmealDishes);
+            SetMealDish current = currentMap.remove(item.getDishId());
+            if (current == null){
+                // 新加入套餐的菜品
+                item.setId(null);
+                inserts.add(item);
+            } else if (isChanged(current,item)){
+                // 份数、价格等发生变化的菜品，沿用原记录的id
+                item.setId(current.getId());
+                updates.add(item);
+            }
+        }
+        // 剩下未匹配的是从套餐中移除的菜品
+        currentMap.values().forEach(current -> deleteIds.add(current.getId()));
+
+        if (!inserts.isEmpty()){
+            setMealDishService.saveBatch(inserts);
+        }
+        if (!updates.isEmpty()){
+            setMealDishService.updateBatchById(updates);
+        }
+        if (!deleteIds.isEmpty()){
+            setMealDishService.removeBatchByIds(deleteIds);
+        }
+        log.info("套餐{}菜品更新：新增{}，修改{}，删除{}",setMealDto.getId(),inserts.size(),updates.size(),deleteIds.size());
         return true;
     }
 
+    // 判断套餐菜品的内容是否发生变化
+    private static boolean isChanged(SetMealDish current, SetMealDish item) {
+        boolean priceChanged = current.getPrice() == null || item.getPrice() == null
+                ? current.getPrice() != item.getPrice()
+                : current.getPrice().compareTo(item.getPrice()) != 0;
+        return priceChanged
+                || !Objects.equals(current.getName(),item.getName())
+                || !Objects.equals(current.getCopies(),item.getCopies())
+                || !Objects.equals(current.getSort(),item.getSort());
+    }
+
     @Override
     @Transactional
     public boolean saveByIdWithSetMealDto(SetMealDto setMealDto) {
@@ -89,4 +150,23 @@ public class SetMealServiceImpl extends ServiceImpl<SetMealMapper, SetMeal> impl
         return this.list(queryWrapper);
     }
 
+    /**
+     * @Description: 批量修改套餐状态，一条UPDATE完成；不经过实体所以不会自动填充，更新时间和更新人在此显式设置
+     * @param status 状态码，0为停售，1为启售
+     * @param ids 套餐id列表
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public void updateStatusByIds(Integer status, List<Long> ids) {
+        if (ids == null || ids.isEmpty()){
+            return;
+        }
+        //SQL:update setmeal set status = ?, update_time = ?, update_user = ? where id in (?,?,...)
+        this.lambdaUpdate()
+                .set(SetMeal::getStatus,status)
+                .set(SetMeal::getUpdateTime, LocalDateTime.now())
+                .set(SetMeal::getUpdateUser, BaseContext.getCurrentId())
+                .in(SetMeal::getId,ids)
+                .update();
+    }
 }
@@ -1,17 +1,408 @@
 package com.codermast.takeoutfood.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.codermast.takeoutfood.common.CustomException;
+import com.codermast.takeoutfood.common.JacksonObjectMapper;
 import com.codermast.takeoutfood.entity.ShoppingCart;
 import com.codermast.takeoutfood.mapper.ShoppingCartMapper;
 import com.codermast.takeoutfood.service.ShoppingCartService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
- * @Description: 购物车服务实现类
+ * @Description: 购物车服务实现类，购物车以每个用户一组Redis哈希的形式存放，数量的增减通过Lua脚本原子完成；
+ * shopping_cart表作为快照，由定时任务异步回写
  * @author: CoderMast
  * @date: 2022/11/30
  * @Blog: <a href="https://www.codermast.com/">codermast</a>
  */
+@Slf4j
 @Service
 public class ShoppingCartServiceImpl extends ServiceImpl<ShoppingCartMapper,ShoppingCart> implements ShoppingCartService {
+    // 用户购物车中各商品的数量，field为商品标识
+    private static final String COUNT_KEY_PREFIX = "shoppingCart:count:";
+
+    // 用户购物车中各商品的信息，field为商品标识，value为商品json
+    private static final String ITEM_KEY_PREFIX = "shoppingCart:item:";
+
+    // 购物车有变动、等待回写数据库的用户id集合
+    private static final String DIRTY_KEY = "shoppingCart:dirty";
+
+    // 回写锁的key前缀，同一用户的购物车同一时刻只允许一个回写，避免较旧的快照覆盖较新的快照
+    private static final String FLUSH_LOCK_PREFIX = "shoppingCart:flush:";
+
+    // 回写锁的有效期，单位秒，远大于一次回写的耗时，持有锁的节点宕机后自动释放
+    private static final long FLUSH_LOCK_SECONDS = 60;
+
+    // 购物车已从数据库加载的标记，存放在数量哈希中
+    private static final String LOADED_FIELD = "_loaded";
+
+    // 购物车在Redis中的有效期，每次修改后刷新，单位秒
+    private static final String TTL_SECONDS = String.valueOf(7 * 24 * 3600);
+
+    // 每次回写的最大用户数
+    private static final int FLUSH_BATCH_SIZE = 100;
+
+    // 增加商品数量，返回{增加后的数量, 购物车中保存的商品json}，商品已存在时保留原来的json，购物车未加载时返回{-1}
+    private static final DefaultRedisScript<List<Object>> ADD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], '" + LOADED_FIELD + "') == 0 then return {-1} end\n" +
+            "redis.call('hsetnx', KEYS[2], ARGV[1], ARGV[2])\n" +
+            "local number = redis.call('hincrby', KEYS[1], ARGV[1], 1)\n" +
+            "redis.call('expire', KEYS[1], ARGV[4])\n" +
+            "redis.call('expire', KEYS[2], ARGV[4])\n" +
+            "redis.call('sadd', KEYS[3], ARGV[3])\n" +
+            "return {number, redis.call('hget', KEYS[2], ARGV[1])}", listType());
+
+    // 按前缀找到商品并减少数量，减到0时删除，返回{剩余数量, 商品json}，商品不存在时返回{0}，购物车未加载时返回{-1}
+    private static final DefaultRedisScript<List<Object>> SUB_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], '" + LOADED_FIELD + "') == 0 then return {-1} end\n" +
+            "local field = nil\n" +
+            "for _, key in ipairs(redis.call('hkeys', KEYS[1])) do\n" +
+            "  if string.sub(key, 1, string.len(ARGV[1])) == ARGV[1] then field = key break end\n" +
+            "end\n" +
+            "if not field then return {0} end\n" +
+            "local item = redis.call('hget', KEYS[2], field)\n" +
+            "local number = redis.call('hincrby', KEYS[1], field, -1)\n" +
+            "if number <= 0 then\n" +
+            "  redis.call('hdel', KEYS[1], field)\n" +
+            "  redis.call('hdel', KEYS[2], field)\n" +
+            "  number = 0\n" +
+            "end\n" +
+            "redis.call('expire', KEYS[1], ARGV[3])\n" +
+            "redis.call('expire', KEYS[2], ARGV[3])\n" +
+            "redis.call('sadd', KEYS[3], ARGV[2])\n" +
+            "return {number, item}", listType());
+
+    // 将数据库中的购物车加载进Redis，已加载时不做任何操作，参数依次为有效期和若干组(商品标识, 数量, 商品json)
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], '" + LOADED_FIELD + "') == 1 then return 0 end\n" +
+            "for i = 2, #ARGV, 3 do\n" +
+            "  redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "  redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 2])\n" +
+            "end\n" +
+            "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1')\n" +
+            "redis.call('expire', KEYS[1], ARGV[1])\n" +
+            "redis.call('expire', KEYS[2], ARGV[1])\n" +
+            "return 1", Long.class);
+
+    // 将若干商品的数量加回购物车，购物车未加载时返回-1，参数依次为用户id、有效期和若干组(商品标识, 数量, 商品json)
+    private static final DefaultRedisScript<Long> RESTORE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], '" + LOADED_FIELD + "') == 0 then return -1 end\n" +
+            "for i = 3, #ARGV, 3 do\n" +
+            "  redis.call('hsetnx', KEYS[2], ARGV[i], ARGV[i + 2])\n" +
+            "  redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "end\n" +
+            "redis.call('expire', KEYS[1], ARGV[2])\n" +
+            "redis.call('expire', KEYS[2], ARGV[2])\n" +
+            "redis.call('sadd', KEYS[3], ARGV[1])\n" +
+            "return 1", Long.class);
+
+    // 释放回写锁，只删除自己持有的锁
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end\n" +
+            "return 0", Long.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new JacksonObjectMapper();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * @param shoppingCart 添加的商品，需已设置用户id
+     * @Description: 将商品添加到购物车，已存在时数量加一，返回购物车中保存的商品，商品已存在时id为原来的id
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public ShoppingCart add(ShoppingCart shoppingCart) {
+        Long userId = shoppingCart.getUserId();
+        shoppingCart.setId(IdWorker.getId());
+        shoppingCart.setCreateTime(LocalDateTime.now());
+        shoppingCart.setNumber(null);
+
+        String field = field(shoppingCart.getDishId(), shoppingCart.getSetmealId(), shoppingCart.getDishFlavor());
+        List<String> keys = keys(userId);
+        String itemJson = toJson(shoppingCart);
+
+        List<Object> result = stringRedisTemplate.execute(ADD_SCRIPT, keys, field, itemJson, String.valueOf(userId), TTL_SECONDS);
+        // 购物车未加载，从数据库加载后重试
+        if (number(result) < 0) {
+            loadFromDb(userId);
+            result = stringRedisTemplate.execute(ADD_SCRIPT, keys, field, itemJson, String.valueOf(userId), TTL_SECONDS);
+        }
+
+        // 返回购物车中实际保存的商品，与列表和数据库中的id一致
+        Object storedJson = result != null && result.size() > 1 ? result.get(1) : null;
+        if (storedJson instanceof String) {
+            shoppingCart = fromJson((String) storedJson);
+        }
+        shoppingCart.setNumber((int) Math.max(number(result), 0));
+        return shoppingCart;
+    }
+
+    /**
+     * @param userId 用户id
+     * @param dishId 菜品id
+     * @param setmealId 套餐id
+     * @Description: 减少一个菜品或套餐的数量，数量为1时减少即为删除，返回减少后的商品
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public ShoppingCart sub(Long userId, Long dishId, Long setmealId) {
+        // 菜品不指定口味，按前缀匹配该菜品的任意口味
+        String prefix = dishId != null ? "dish:" + dishId + ":" : "setmeal:" + setmealId + ":";
+        List<String> keys = keys(userId);
+
+        List<Object> result = stringRedisTemplate.execute(SUB_SCRIPT, keys, prefix, String.valueOf(userId), TTL_SECONDS);
+        if (number(result) < 0) {
+            loadFromDb(userId);
+            result = stringRedisTemplate.execute(SUB_SCRIPT, keys, prefix, String.valueOf(userId), TTL_SECONDS);
+        }
+
+        // 数量哈希中有该商品而商品哈希中缺失时，脚本返回的商品json为空，按商品不存在处理
+        Object itemJson = result != null && result.size() > 1 ? result.get(1) : null;
+        ShoppingCart shoppingCart;
+        if (itemJson instanceof String) {
+            shoppingCart = fromJson((String) itemJson);
+        } else {
+            // 购物车中不存在该商品
+            shoppingCart = new ShoppingCart();
+            shoppingCart.setUserId(userId);
+            shoppingCart.setDishId(dishId);
+            shoppingCart.setSetmealId(setmealId);
+        }
+        shoppingCart.setNumber((int) Math.max(number(result), 0));
+        return shoppingCart;
+    }
+
+    /**
+     * @param userId 用户id
+     * @Description: 获取用户的购物车列表，按加入时间排序
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public List<ShoppingCart> listByUserId(Long userId) {
+        List<ShoppingCart> list = readFromRedis(userId);
+        if (list == null) {
+            loadFromDb(userId);
+            list = readFromRedis(userId);
+        }
+        return list == null ? new ArrayList<>() : list;
+    }
+
+    /**
+     * @param userId 用户id
+     * @Description: 清空用户的购物车，数据库快照由回写任务删除
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public void clean(Long userId) {
+        List<String> keys = keys(userId);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.del(keys.get(0), keys.get(1));
+            // 清空后的购物车仍视为已加载，避免再次从数据库加载旧快照
+            stringConnection.hSet(keys.get(0), LOADED_FIELD, "1");
+            stringConnection.expire(keys.get(0), Long.parseLong(TTL_SECONDS));
+            stringConnection.sAdd(DIRTY_KEY, String.valueOf(userId));
+            return null;
+        });
+    }
+
+    /**
+     * @param userId 用户id
+     * @param shoppingCarts 要放回的商品及数量
+     * @Description: 将商品放回购物车，已存在的商品累加数量，用于下单失败后恢复已清空的购物车
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    public void restore(Long userId, List<ShoppingCart> shoppingCarts) {
+        if (shoppingCarts == null || shoppingCarts.isEmpty()) {
+            return;
+        }
+
+        List<String> args = new ArrayList<>(shoppingCarts.size() * 3 + 2);
+        args.add(String.valueOf(userId));
+        args.add(TTL_SECONDS);
+        for (ShoppingCart shoppingCart : shoppingCarts) {
+            Integer number = shoppingCart.getNumber();
+            shoppingCart.setNumber(null);
+            args.add(field(shoppingCart.getDishId(), shoppingCart.getSetmealId(), shoppingCart.getDishFlavor()));
+            args.add(String.valueOf(number == null ? 1 : number));
+            args.add(toJson(shoppingCart));
+            shoppingCart.setNumber(number);
+        }
+
+        List<String> keys = keys(userId);
+        Long result = stringRedisTemplate.execute(RESTORE_SCRIPT, keys, args.toArray());
+        // 购物车未加载，从数据库加载后重试
+        if (result != null && result < 0) {
+            loadFromDb(userId);
+            stringRedisTemplate.execute(RESTORE_SCRIPT, keys, args.toArray());
+        }
+    }
+
+    /**
+     * @Description: 定时将有变动的购物车回写到数据库，每个用户的快照在一个事务中整体替换
+     * @Author: <a href="https://www.codermast.com/">CoderMast</a>
+     */
+    @Override
+    @Scheduled(fixedDelayString = "${takeout-food.shopping-cart.flush-interval:5000}")
+    public void flushDirtyCarts() {
+        List<String> userIds;
+        try {
+            userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, FLUSH_BATCH_SIZE);
+        } catch (Exception e) {
+            log.warn("获取待回写的购物车失败：{}", e.getMessage());
+            return;
+        }
+        if (userIds == null) {
+            return;
+        }
+
+        for (String userId : userIds) {
+            try {
+                flush(Long.valueOf(userId));
+            } catch (Exception e) {
+                // 回写失败，放回集合等待下次回写
+                log.warn("购物车回写失败，用户id：{}，{}", userId, e.getMessage());
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, userId);
+            }
+        }
+    }
+
+    // 持有该用户的回写锁后读取Redis中的购物车并整体替换数据库中的快照。锁内的读取总是晚于上一次回写，
+    // 快照只会由旧到新提交；回写期间的修改会再次把用户加入待回写集合。其他节点正在回写时放回集合，下次再写
+    private void flush(Long userId) {
+        String lockKey = FLUSH_LOCK_PREFIX + userId;
+        String token = UUID.randomUUID().toString();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            stringRedisTemplate.opsForSet().add(DIRTY_KEY, String.valueOf(userId));
+            return;
+        }
+
+        try {
+            List<ShoppingCart> list = readFromRedis(userId);
+            // Redis中的购物车已过期，保留数据库快照
+            if (list == null) {
+                return;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+                queryWrapper.eq(ShoppingCart::getUserId, userId);
+                this.remove(queryWrapper);
+                if (!list.isEmpty()) {
+                    this.saveBatch(list);
+                }
+            });
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        }
+    }
+
+    // 从Redis读取购物车，未加载时返回null
+    private List<ShoppingCart> readFromRedis(Long userId) {
+        List<String> keys = keys(userId);
+        List<Object> result = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.hGetAll(keys.get(0));
+            stringConnection.hGetAll(keys.get(1));
+            return null;
+        });
+
+        Map<?, ?> counts = (Map<?, ?>) result.get(0);
+        Map<?, ?> items = (Map<?, ?>) result.get(1);
+        if (counts == null || !counts.containsKey(LOADED_FIELD)) {
+            return null;
+        }
+
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<?, ?> entry : counts.entrySet()) {
+            String itemJson = items == null ? null : (String) items.get(entry.getKey());
+            if (LOADED_FIELD.equals(entry.getKey()) || itemJson == null) {
+                continue;
+            }
+            ShoppingCart shoppingCart = fromJson(itemJson);
+            shoppingCart.setNumber(Integer.valueOf((String) entry.getValue()));
+            list.add(shoppingCart);
+        }
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return list;
+    }
+
+    // 从数据库快照加载购物车到Redis
+    private void loadFromDb(Long userId) {
+        LambdaQueryWrapper<ShoppingCart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(ShoppingCart::getUserId, userId);
+        List<ShoppingCart> list = this.list(queryWrapper);
+
+        List<String> args = new ArrayList<>(list.size() * 3 + 1);
+        args.add(TTL_SECONDS);
+        for (ShoppingCart shoppingCart : list) {
+            Integer number = shoppingCart.getNumber();
+            shoppingCart.setNumber(null);
+            args.add(field(shoppingCart.getDishId(), shoppingCart.getSetmealId(), shoppingCart.getDishFlavor()));
+            args.add(String.valueOf(number));
+            args.add(toJson(shoppingCart));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, keys(userId), args.toArray());
+    }
+
+    // 脚本返回结果中的数量，没有结果时视为0
+    private static long number(List<Object> result) {
+        return result != null && !result.isEmpty() && result.get(0) instanceof Long ? (Long) result.get(0) : 0L;
+    }
+
+    // 脚本返回多个值时的结果类型
+    @SuppressWarnings("unchecked")
+    private static Class<List<Object>> listType() {
+        return (Class<List<Object>>) (Class<?>) List.class;
+    }
+
+    private static List<String> keys(Long userId) {
+        return Arrays.asList(COUNT_KEY_PREFIX + userId, ITEM_KEY_PREFIX + userId, DIRTY_KEY);
+    }
+
+    // 商品标识，菜品为 dish:菜品id:口味，套餐为 setmeal:套餐id:
+    private static String field(Long dishId, Long setmealId, String dishFlavor) {
+        if (dishId != null) {
+            return "dish:" + dishId + ":" + (dishFlavor == null ? "" : dishFlavor);
+        }
+        return "setmeal:" + setmealId + ":";
+    }
+
+    private static String toJson(ShoppingCart shoppingCart) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(shoppingCart);
+        } catch (JsonProcessingException e) {
+            throw new CustomException("购物车数据格式错误");
+        }
+    }
+
+    private static ShoppingCart fromJson(String json) {
+        try {
+            return OBJECT_MAPPER.readValue(json, ShoppingCart.class);
+        } catch (JsonProcessingException e) {
+            throw new CustomException("购物车数据格式错误");
+        }
+    }
 }
@@ -31,4 +31,12 @@ function orderAgainApi(data) {
       'method': 'post',
       data
   })
-}
\ No newline at end of file
+}
+
+//查询订单提交状态
+function orderStatusApi(id) {
+  return $axios({
+      'url': `/order/status/${id}`,
+      'method': 'get',
+  })
+}
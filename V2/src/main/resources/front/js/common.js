@@ -1,7 +1,8 @@
 var web_prefix = '/front'
 
-function imgPath(path){
-    return '/common/download?name=' + path
+//size为图片尺寸：thumb缩略图、list列表图、detail详情图，不传时为原图
+function imgPath(path, size){
+    return '/common/download?name=' + path + (size ? '&size=' + size : '')
 }
 
 //将url传参转换为数组
@@ -0,0 +1,42 @@
+package com.codermast.takeoutfood;
+
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 需要真实MySQL和Redis的测试在服务不可达时跳过，而不是失败
+ */
+public final class ExternalServices {
+    private static final Pattern JDBC_HOST_PORT = Pattern.compile("//([^:/?]+):(\\d+)");
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private ExternalServices() {
+    }
+
+    public static void assumeAvailable(Environment environment) {
+        Matcher matcher = JDBC_HOST_PORT.matcher(environment.getProperty("spring.datasource.druid.url", ""));
+        assumeTrue(matcher.find(), "未配置数据库地址");
+        assumeTrue(reachable(matcher.group(1), Integer.parseInt(matcher.group(2))), "数据库不可达");
+
+        String redisHost = environment.getProperty("spring.redis.host", "localhost");
+        int redisPort = environment.getProperty("spring.redis.port", Integer.class, 6379);
+        assumeTrue(reachable(redisHost, redisPort), "Redis不可达");
+    }
+
+    private static boolean reachable(String host, int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
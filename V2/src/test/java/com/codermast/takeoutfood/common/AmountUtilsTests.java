@@ -0,0 +1,102 @@
+package com.codermast.takeoutfood.common;
+
+import com.codermast.takeoutfood.entity.ShoppingCart;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AmountUtilsTests {
+
+    @Test
+    void cartTotalMatchesExactDecimalArithmetic() {
+        Random random = new Random(20261017L);
+        for (int round = 0; round < 1000; round++) {
+            List<ShoppingCart> shoppingCarts = new ArrayList<>();
+            BigDecimal expected = BigDecimal.ZERO;
+            int size = 1 + random.nextInt(20);
+            for (int i = 0; i < size; i++) {
+                ShoppingCart shoppingCart = new ShoppingCart();
+                shoppingCart.setAmount(BigDecimal.valueOf(random.nextInt(1_000_000), 2));
+                shoppingCart.setNumber(1 + random.nextInt(50));
+                shoppingCarts.add(shoppingCart);
+                expected = expected.add(shoppingCart.getAmount().multiply(BigDecimal.valueOf(shoppingCart.getNumber())));
+            }
+            assertEquals(0, expected.compareTo(AmountUtils.toYuan(AmountUtils.cartTotalFen(shoppingCarts))));
+        }
+    }
+
+    @Test
+    void fenTotalIsExactWhereIntValueTruncates() {
+        List<ShoppingCart> shoppingCarts = randomCarts(new Random(7L), 10_000);
+        long fen = 0;
+        for (ShoppingCart shoppingCart : shoppingCarts) {
+            fen += AmountUtils.lineTotalFen(shoppingCart.getAmount(), shoppingCart.getNumber());
+        }
+        // 原实现按整数元截断，总额与精确值不一致
+        assertTrue(legacyTotal(shoppingCarts).compareTo(AmountUtils.toYuan(fen)) != 0);
+        assertEquals(fen, AmountUtils.cartTotalFen(shoppingCarts));
+    }
+
+    @Test
+    void compareWithLegacyTotal() {
+        // 没有JMH，用预热后的多轮计时对比原实现和按分计算的耗时，结果输出到测试日志
+        List<ShoppingCart> shoppingCarts = randomCarts(new Random(20261017L), 20);
+        int rounds = 200_000;
+        long sink = 0;
+        for (int warmup = 0; warmup < 3; warmup++) {
+            for (int i = 0; i < rounds; i++) {
+                sink += legacyTotal(shoppingCarts).intValue() + AmountUtils.cartTotalFen(shoppingCarts);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += legacyTotal(shoppingCarts).intValue();
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += AmountUtils.cartTotalFen(shoppingCarts);
+        }
+        long fenNanos = System.nanoTime() - start;
+
+        System.out.printf("20件商品的购物车合计：原实现 %d ns/次，按分计算 %d ns/次（%d）%n",
+                legacyNanos / rounds, fenNanos / rounds, sink & 1);
+    }
+
+    @Test
+    void yuanFenRoundTrip() {
+        assertEquals(1999, AmountUtils.toFen(new BigDecimal("19.99")));
+        assertEquals(1200, AmountUtils.toFen(new BigDecimal("12")));
+        assertEquals(101, AmountUtils.toFen(new BigDecimal("1.005")));
+        assertEquals(new BigDecimal("19.99"), AmountUtils.toYuan(1999));
+    }
+
+    // 下单原来的算法：逐项BigDecimal相乘后取intValue，累加到AtomicInteger
+    private static BigDecimal legacyTotal(List<ShoppingCart> shoppingCarts) {
+        AtomicInteger amount = new AtomicInteger(0);
+        for (ShoppingCart item : shoppingCarts) {
+            amount.addAndGet(item.getAmount().multiply(new BigDecimal(item.getNumber())).intValue());
+        }
+        return new BigDecimal(amount.get());
+    }
+
+    private static List<ShoppingCart> randomCarts(Random random, int size) {
+        List<ShoppingCart> shoppingCarts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ShoppingCart shoppingCart = new ShoppingCart();
+            shoppingCart.setAmount(BigDecimal.valueOf(random.nextInt(1_000_000), 2));
+            shoppingCart.setNumber(1 + random.nextInt(50));
+            shoppingCarts.add(shoppingCart);
+        }
+        return shoppingCarts;
+    }
+}
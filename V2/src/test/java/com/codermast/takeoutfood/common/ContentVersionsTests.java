@@ -0,0 +1,72 @@
+package com.codermast.takeoutfood.common;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ContentVersionsTests {
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        hashOperations = mock(HashOperations.class);
+    }
+
+    @Test
+    void nodesSharingRedisProduceSameEtag() {
+        when(hashOperations.multiGet(eq("contentVersion"), anyList())).thenReturn(Arrays.asList("e1", "7"));
+
+        // 两个节点的本地副本都从Redis读取，ETag相同
+        assertEquals(newNode().etag(ContentVersions.MENU), newNode().etag(ContentVersions.MENU));
+        assertEquals("\"e1-7\"", newNode().etag(ContentVersions.MENU));
+    }
+
+    @Test
+    void refreshPicksUpIncrementFromOtherNode() {
+        when(hashOperations.multiGet(eq("contentVersion"), anyList())).thenReturn(Arrays.asList("e1", "7"));
+        ContentVersions node = newNode();
+        String before = node.etag(ContentVersions.MENU);
+
+        // 其他节点递增后，本节点收到通知重新读取
+        when(hashOperations.multiGet(eq("contentVersion"), anyList())).thenReturn(Arrays.asList("e1", "8"));
+        node.refresh(ContentVersions.MENU);
+
+        assertEquals("\"e1-8\"", node.etag(ContentVersions.MENU));
+        assertNotEquals(before, node.etag(ContentVersions.MENU));
+    }
+
+    @Test
+    void failedIncrementChangesEtag() {
+        when(hashOperations.multiGet(eq("contentVersion"), anyList())).thenReturn(Arrays.asList("e1", "7"));
+        when(hashOperations.increment(anyString(), anyString(), anyLong())).thenThrow(new IllegalStateException("down"));
+        ContentVersions node = newNode();
+        String before = node.etag(ContentVersions.MENU);
+
+        // Redis递增失败时本节点改用新的纪元，不会对已变化的内容返回304
+        node.increment(ContentVersions.MENU);
+
+        assertNotEquals(before, node.etag(ContentVersions.MENU));
+    }
+
+    private ContentVersions newNode() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        ContentVersions contentVersions = new ContentVersions();
+        ReflectionTestUtils.setField(contentVersions, "stringRedisTemplate", stringRedisTemplate);
+        return contentVersions;
+    }
+}
@@ -0,0 +1,89 @@
+package com.codermast.takeoutfood.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdBloomFilterTests {
+    private StringRedisTemplate stringRedisTemplate;
+
+    private ValueOperations<String, String> valueOperations;
+
+    private IdBloomFilter idBloomFilter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        idBloomFilter = new IdBloomFilter();
+        ReflectionTestUtils.setField(idBloomFilter, "stringRedisTemplate", stringRedisTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        idBloomFilter.shutdown();
+    }
+
+    @Test
+    void missingBitmapPassesAndTriggersRebuild() throws InterruptedException {
+        // 位图key不存在时GETBIT全部返回0，包括就绪位
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(bits(false, false));
+
+        CountDownLatch loaded = new CountDownLatch(1);
+        idBloomFilter.register(IdBloomFilter.DISH, () -> {
+            loaded.countDown();
+            return Collections.singletonList(1L);
+        });
+
+        assertTrue(idBloomFilter.mightContain(IdBloomFilter.DISH, 42L));
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        // 重建写入全部id后重新置就绪位
+        verify(valueOperations, timeout(5000)).setBit(eq("bloom:" + IdBloomFilter.DISH), anyLong(), eq(true));
+    }
+
+    @Test
+    void readyBitmapRejectsAbsentId() {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(bits(true, false));
+
+        assertFalse(idBloomFilter.mightContain(IdBloomFilter.DISH, 42L));
+    }
+
+    @Test
+    void readyBitmapAcceptsPresentId() {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(bits(true, true));
+
+        assertTrue(idBloomFilter.mightContain(IdBloomFilter.DISH, 42L));
+    }
+
+    // 管道返回的位：第一个为就绪位，其余为数据位
+    private static List<Object> bits(boolean ready, boolean data) {
+        List<Object> bits = new ArrayList<>();
+        bits.add(ready);
+        for (int i = 0; i < 5; i++) {
+            bits.add(data);
+        }
+        return bits;
+    }
+}
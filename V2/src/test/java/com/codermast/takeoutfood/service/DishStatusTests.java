@@ -0,0 +1,88 @@
+package com.codermast.takeoutfood.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.codermast.takeoutfood.ExternalServices;
+import com.codermast.takeoutfood.common.BaseContext;
+import com.codermast.takeoutfood.entity.Dish;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 批量起售停售：对比逐条updateById与一条UPDATE ... WHERE id IN (...)在10、100、1000个id下的耗时
+ */
+@SpringBootTest
+class DishStatusTests {
+    private static final int[] SIZES = {10, 100, 1000};
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private DishService dishService;
+
+    private final List<Long> dishIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ExternalServices.assumeAvailable(environment);
+        BaseContext.setCurrentId(1L);
+
+        String batch = UUID.randomUUID().toString().substring(0, 8);
+        List<Dish> dishes = new ArrayList<>();
+        for (int i = 0; i < SIZES[SIZES.length - 1]; i++) {
+            Dish dish = new Dish();
+            dish.setName("状态测试" + batch + "-" + i);
+            dish.setCategoryId(1L);
+            dish.setPrice(new BigDecimal("10.00"));
+            dish.setCode("");
+            dish.setImage("");
+            dish.setStatus(1);
+            dish.setSort(0);
+            dishes.add(dish);
+        }
+        dishService.saveBatch(dishes);
+        dishIds.addAll(dishes.stream().map(Dish::getId).collect(Collectors.toList()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (!dishIds.isEmpty()) {
+            dishService.removeBatchByIds(dishIds);
+        }
+        BaseContext.setCurrentId(null);
+    }
+
+    @Test
+    void bulkStatusUpdate() {
+        for (int size : SIZES) {
+            List<Long> ids = dishIds.subList(0, size);
+
+            // 原实现：先查出全部菜品，再逐条更新
+            long start = System.nanoTime();
+            for (Dish dish : dishService.listByIds(ids)) {
+                dish.setStatus(0);
+                dishService.updateById(dish);
+            }
+            long perRowNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            dishService.updateStatusByIds(1, ids);
+            long bulkNanos = System.nanoTime() - start;
+
+            assertEquals(size, dishService.count(new LambdaQueryWrapper<Dish>().in(Dish::getId, ids).eq(Dish::getStatus, 1)));
+            System.out.printf("%d个菜品：逐条更新 %.1f ms，批量更新 %.1f ms%n", size, perRowNanos / 1e6, bulkNanos / 1e6);
+        }
+    }
+}
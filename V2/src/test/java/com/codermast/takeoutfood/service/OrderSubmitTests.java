@@ -0,0 +1,191 @@
+package com.codermast.takeoutfood.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.codermast.takeoutfood.ExternalServices;
+import com.codermast.takeoutfood.common.BaseContext;
+import com.codermast.takeoutfood.entity.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 异步下单：对比逐单同步写入与入队后批量写入的耗时，并验证队列中的订单全部写入数据库
+ */
+@SpringBootTest
+class OrderSubmitTests {
+    private static final int ORDERS = 200;
+
+    private static final int ITEMS_PER_ORDER = 3;
+
+    private static final long DRAIN_TIMEOUT_MILLIS = 60_000;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderDetailService orderDetailService;
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User user;
+
+    private AddressBook addressBook;
+
+    @BeforeEach
+    void setUp() {
+        ExternalServices.assumeAvailable(environment);
+
+        user = new User();
+        user.setName("下单测试用户");
+        user.setPhone("19900000000");
+        user.setStatus(1);
+        userService.save(user);
+        BaseContext.setCurrentId(user.getId());
+
+        addressBook = new AddressBook();
+        addressBook.setUserId(user.getId());
+        addressBook.setConsignee("测试");
+        addressBook.setSex("1");
+        addressBook.setPhone("19900000000");
+        addressBook.setDetail("测试地址");
+        addressBookService.save(addressBook);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (user == null) {
+            return;
+        }
+        List<Long> orderIds = orderService.listObjs(new LambdaQueryWrapper<Order>()
+                .select(Order::getId).eq(Order::getUserId, user.getId()), id -> Long.valueOf(String.valueOf(id)));
+        if (!orderIds.isEmpty()) {
+            orderDetailService.remove(new LambdaQueryWrapper<OrderDetail>().in(OrderDetail::getOrderId, orderIds));
+            orderService.removeBatchByIds(orderIds);
+        }
+        shoppingCartService.clean(user.getId());
+        shoppingCartService.remove(new LambdaQueryWrapper<ShoppingCart>().eq(ShoppingCart::getUserId, user.getId()));
+        addressBookService.removeById(addressBook.getId());
+        userService.removeById(user.getId());
+        BaseContext.setCurrentId(null);
+    }
+
+    @Test
+    void queuedOrdersAreWrittenInBatches() throws InterruptedException {
+        // 原实现：请求线程中逐单写入订单和明细
+        long start = System.nanoTime();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = newOrder();
+            List<OrderDetail> orderDetails = newDetails(order.getId());
+            transactionTemplate.executeWithoutResult(status -> {
+                orderService.save(order);
+                orderDetailService.saveBatch(orderDetails);
+            });
+        }
+        long syncNanos = System.nanoTime() - start;
+
+        // 异步下单：只统计submit本身的耗时，写入由后台线程批量完成
+        List<Long> orderIds = new ArrayList<>();
+        long submitNanos = 0;
+        for (int i = 0; i < ORDERS; i++) {
+            for (int item = 0; item < ITEMS_PER_ORDER; item++) {
+                shoppingCartService.add(newCartItem(item));
+            }
+            Order order = new Order();
+            order.setAddressBookId(addressBook.getId());
+            order.setPayMethod(1);
+            start = System.nanoTime();
+            orderIds.add(orderService.submit(order));
+            submitNanos += System.nanoTime() - start;
+        }
+
+        // 等待队列写完，所有订单都应写入成功
+        long drainStart = System.nanoTime();
+        List<String> statuses = statuses(orderIds);
+        while (statuses.contains(OrderService.SUBMIT_PENDING)
+                && System.nanoTime() - drainStart < DRAIN_TIMEOUT_MILLIS * 1_000_000) {
+            Thread.sleep(50);
+            statuses = statuses(orderIds);
+        }
+        long drainNanos = System.nanoTime() - drainStart + submitNanos;
+
+        assertEquals(ORDERS, statuses.stream().filter(OrderService.SUBMIT_SUCCESS::equals).count());
+        assertEquals(2L * ORDERS, orderService.count(new LambdaQueryWrapper<Order>().eq(Order::getUserId, user.getId())));
+        assertEquals((long) ORDERS * ITEMS_PER_ORDER,
+                orderDetailService.count(new LambdaQueryWrapper<OrderDetail>().in(OrderDetail::getOrderId, orderIds)));
+
+        System.out.printf("%d单：同步写入 %.2f ms/单；异步下单 %.2f ms/单，全部写入完成约 %.0f 单/秒（同步 %.0f 单/秒）%n",
+                ORDERS, syncNanos / 1e6 / ORDERS, submitNanos / 1e6 / ORDERS,
+                ORDERS / (drainNanos / 1e9), ORDERS / (syncNanos / 1e9));
+    }
+
+    private List<String> statuses(List<Long> orderIds) {
+        return orderIds.stream().map(orderService::getSubmitStatus).collect(Collectors.toList());
+    }
+
+    private Order newOrder() {
+        Order order = new Order();
+        order.setId(IdWorker.getId());
+        order.setNumber(String.valueOf(order.getId()));
+        order.setStatus(2);
+        order.setUserId(user.getId());
+        order.setAddressBookId(addressBook.getId());
+        order.setOrderTime(LocalDateTime.now());
+        order.setCheckoutTime(LocalDateTime.now());
+        order.setPayMethod(1);
+        order.setAmount(new BigDecimal("37.50"));
+        order.setUserName(user.getName());
+        order.setConsignee(addressBook.getConsignee());
+        order.setPhone(addressBook.getPhone());
+        order.setAddress(addressBook.getDetail());
+        return order;
+    }
+
+    private List<OrderDetail> newDetails(Long orderId) {
+        List<OrderDetail> orderDetails = new ArrayList<>();
+        for (int item = 0; item < ITEMS_PER_ORDER; item++) {
+            OrderDetail orderDetail = new OrderDetail();
+            orderDetail.setOrderId(orderId);
+            orderDetail.setDishId((long) item + 1);
+            orderDetail.setName("测试菜品" + item);
+            orderDetail.setNumber(1);
+            orderDetail.setAmount(new BigDecimal("12.50"));
+            orderDetails.add(orderDetail);
+        }
+        return orderDetails;
+    }
+
+    private ShoppingCart newCartItem(int item) {
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setUserId(user.getId());
+        shoppingCart.setDishId((long) item + 1);
+        shoppingCart.setName("测试菜品" + item);
+        shoppingCart.setAmount(new BigDecimal("12.50"));
+        return shoppingCart;
+    }
+}
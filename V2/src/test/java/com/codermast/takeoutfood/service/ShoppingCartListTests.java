@@ -0,0 +1,118 @@
+package com.codermast.takeoutfood.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.codermast.takeoutfood.ExternalServices;
+import com.codermast.takeoutfood.entity.ShoppingCart;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 购物车列表：验证只返回当前用户的商品，且冷读耗时不随其他用户数量增长
+ */
+@SpringBootTest
+class ShoppingCartListTests {
+    private static final int[] OTHER_USERS = {10, 1000};
+
+    private static final int ITEMS_PER_USER = 3;
+
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final List<Long> userIds = new ArrayList<>();
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        ExternalServices.assumeAvailable(environment);
+        userId = IdWorker.getId();
+        userIds.add(userId);
+        shoppingCartService.saveBatch(newItems(userId));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (userId == null) {
+            return;
+        }
+        for (int i = 0; i < userIds.size(); i += 500) {
+            List<Long> batch = userIds.subList(i, Math.min(i + 500, userIds.size()));
+            shoppingCartService.remove(new LambdaQueryWrapper<ShoppingCart>().in(ShoppingCart::getUserId, batch));
+        }
+        evict();
+    }
+
+    @Test
+    void listIsUserScoped() {
+        double[] millis = new double[OTHER_USERS.length];
+        for (int stage = 0; stage < OTHER_USERS.length; stage++) {
+            // 补齐其他用户的购物车数据
+            List<ShoppingCart> others = new ArrayList<>();
+            while (userIds.size() - 1 < OTHER_USERS[stage]) {
+                Long otherId = IdWorker.getId();
+                userIds.add(otherId);
+                others.addAll(newItems(otherId));
+            }
+            shoppingCartService.saveBatch(others);
+
+            // 每轮先删除Redis中的购物车，使读取走数据库加载
+            long total = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                evict();
+                long start = System.nanoTime();
+                List<ShoppingCart> list = shoppingCartService.listByUserId(userId);
+                total += System.nanoTime() - start;
+
+                assertEquals(ITEMS_PER_USER, list.size());
+                assertTrue(list.stream().allMatch(item -> userId.equals(item.getUserId())));
+            }
+            millis[stage] = total / 1e6 / ROUNDS;
+            System.out.printf("其他用户 %d 个：冷读购物车 %.2f ms/次%n", OTHER_USERS[stage], millis[stage]);
+        }
+
+        // 其他用户增加100倍，耗时不应随之线性增长，留出足够的余量避免抖动误报
+        assertTrue(millis[1] < millis[0] * 5 + 5, "购物车读取耗时随其他用户数量增长");
+    }
+
+    private void evict() {
+        stringRedisTemplate.delete(Arrays.asList("shoppingCart:count:" + userId, "shoppingCart:item:" + userId));
+    }
+
+    private static List<ShoppingCart> newItems(Long userId) {
+        List<ShoppingCart> items = new ArrayList<>();
+        for (int item = 0; item < ITEMS_PER_USER; item++) {
+            ShoppingCart shoppingCart = new ShoppingCart();
+            shoppingCart.setUserId(userId);
+            shoppingCart.setDishId((long) item + 1);
+            shoppingCart.setName("测试菜品" + item);
+            shoppingCart.setNumber(1);
+            shoppingCart.setAmount(new BigDecimal("12.50"));
+            shoppingCart.setCreateTime(LocalDateTime.now());
+            items.add(shoppingCart);
+        }
+        return items;
+    }
+}
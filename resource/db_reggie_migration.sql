@@ -0,0 +1,8 @@
+/*
+已有数据库的升级脚本，按顺序执行；新建数据库直接导入 db_reggie.sql 即可
+*/
+
+-- ----------------------------
+-- 购物车按用户id查询、回写，增加用户id索引
+-- ----------------------------
+ALTER TABLE `shopping_cart` ADD INDEX `idx_user_id` (`user_id`);